@@ -25,11 +25,13 @@ import org.sonar.api.Property;
 import org.sonar.api.PropertyType;
 import org.sonar.issuesreport.printer.console.ConsolePrinter;
 import org.sonar.issuesreport.printer.html.HtmlPrinter;
+import org.sonar.issuesreport.printer.html.TemplateEngine;
 import org.sonar.issuesreport.provider.RuleNameProvider;
 import org.sonar.issuesreport.provider.RuleProvider;
 import org.sonar.issuesreport.provider.SourceProvider;
 import org.sonar.issuesreport.report.IssuesReportBuilder;
 import org.sonar.issuesreport.fs.InputFilesCollector;
+import org.sonar.issuesreport.fs.ResourceIndex;
 
 @Properties({
   @Property(key = IssuesReportPlugin.HTML_REPORT_ENABLED_KEY, name = "Enable HTML report", description = "Set this to true to generate an HTML report",
@@ -40,11 +42,47 @@ import org.sonar.issuesreport.fs.InputFilesCollector;
   @Property(key = IssuesReportPlugin.HTML_REPORT_NAME_KEY, name = "HTML Report name",
     description = "Name of the generated report. Will be suffixed by .html or -light.html",
     type = PropertyType.STRING, defaultValue = IssuesReportPlugin.HTML_REPORT_NAME_DEFAULT, global = false, project = false),
+  @Property(key = IssuesReportPlugin.HTML_FRAGMENT_CACHE_KEY, name = "Reuse HTML of unchanged files",
+    description = "Set this to true to keep the HTML rendered for each file in the working directory, and reuse it in the next analysis when the file and its issues did not change",
+    type = PropertyType.BOOLEAN, defaultValue = "false", global = false, project = false),
+  @Property(key = IssuesReportPlugin.HTML_SOURCE_CACHE_SIZE_KEY, name = "HTML report source cache size",
+    description = "Memory in MB used to keep the sources read for the full HTML report, so that the light report does not read and escape them again",
+    type = PropertyType.INTEGER, defaultValue = "32", global = false, project = false),
+  @Property(key = IssuesReportPlugin.HTML_PREFETCH_THREADS_KEY, name = "HTML report source prefetch threads",
+    description = "Number of threads reading the sources of the next files while the HTML report is rendered. Not used by default",
+    type = PropertyType.INTEGER, defaultValue = "0", global = false, project = false),
   @Property(key = IssuesReportPlugin.CONSOLE_REPORT_ENABLED_KEY, name = "Enable console report", description = "Set this to true to generate a report in console output",
     type = PropertyType.BOOLEAN, defaultValue = "false"),
   @Property(key = IssuesReportPlugin.HTML_REPORT_LIGHTMODE_ONLY, name = "Html report in light mode only", project = true,
     description = "Set this to true to only generate the new issues report (light report)",
-    type = PropertyType.BOOLEAN, defaultValue = "false")})
+    type = PropertyType.BOOLEAN, defaultValue = "false"),
+  @Property(key = IssuesReportPlugin.RULES_CACHE_DIR_KEY, name = "Rule cache directory",
+    description = "Directory where rule names are kept between analyses. Can be shared by several projects. Defaults to the working directory",
+    type = PropertyType.STRING, global = false, project = false),
+  @Property(key = IssuesReportPlugin.RULES_CACHE_MAX_AGE_KEY, name = "Rule cache maximum age",
+    description = "Age in hours after which a cached rule name is fetched again from the server",
+    type = PropertyType.INTEGER, defaultValue = "24", global = false, project = false),
+  @Property(key = IssuesReportPlugin.RULES_FETCH_THREADS_KEY, name = "Rule fetch threads",
+    description = "Maximum number of concurrent calls used to fetch rules that could not be loaded in bulk. Set to 1 to fetch them sequentially",
+    type = PropertyType.INTEGER, defaultValue = "4", global = false, project = false),
+  @Property(key = IssuesReportPlugin.RULES_FETCH_TIMEOUT_KEY, name = "Rule fetch timeout",
+    description = "Time in milliseconds to wait for all the rules fetched concurrently, together. Rules not fetched by then are considered as missing",
+    type = PropertyType.INTEGER, defaultValue = "10000", global = false, project = false),
+  @Property(key = IssuesReportPlugin.RULES_FAIL_SOFT_KEY, name = "Tolerate rule fetch failures",
+    description = "Set this to false to fail the report when a rule cannot be fetched from the server, instead of displaying its key",
+    type = PropertyType.BOOLEAN, defaultValue = "true", global = false, project = false),
+  @Property(key = IssuesReportPlugin.RULES_CATALOG_KEY, name = "Rule catalog",
+    description = "Path to a rule catalog file generated by RuleCatalogExporter. Rules found in this file are never fetched from the server",
+    type = PropertyType.STRING, global = false, project = false),
+  @Property(key = IssuesReportPlugin.RULES_WARM_UP_KEY, name = "Load active rules in background",
+    description = "Set this to true to start loading the active rules during the sensor phase, so that the report does not wait for the server",
+    type = PropertyType.BOOLEAN, defaultValue = "false", global = false, project = false),
+  @Property(key = IssuesReportPlugin.BUILD_THREADS_KEY, name = "Report build threads",
+    description = "Number of threads used to build the report from issues. Issues are split by file, set to 1 to build the report sequentially",
+    type = PropertyType.INTEGER, defaultValue = "1", global = false, project = false),
+  @Property(key = IssuesReportPlugin.SPILL_THRESHOLD_KEY, name = "Issue count to keep issues on disk",
+    description = "Above this number of issues, issue keys and messages are written to a temporary file of the working directory instead of being kept in memory until the report is printed. Not set by default: issues are kept in memory",
+    type = PropertyType.INTEGER, global = false, project = false)})
 public final class IssuesReportPlugin implements Plugin {
 
   public static final String HTML_REPORT_ENABLED_KEY = "sonar.issuesReport.html.enable";
@@ -53,9 +91,28 @@ public final class IssuesReportPlugin implements Plugin {
   public static final String HTML_REPORT_NAME_KEY = "sonar.issuesReport.html.name";
   public static final String HTML_REPORT_NAME_DEFAULT = "issues-report";
   public static final String HTML_REPORT_LIGHTMODE_ONLY = "sonar.issuesReport.lightModeOnly";
+  public static final String HTML_FRAGMENT_CACHE_KEY = "sonar.issuesReport.html.fragmentCache";
+  public static final String HTML_SOURCE_CACHE_SIZE_KEY = "sonar.issuesReport.html.sourceCacheSize";
+  public static final int HTML_SOURCE_CACHE_SIZE_DEFAULT = 32;
+  public static final String HTML_PREFETCH_THREADS_KEY = "sonar.issuesReport.html.prefetchThreads";
 
   public static final String CONSOLE_REPORT_ENABLED_KEY = "sonar.issuesReport.console.enable";
 
+  public static final String RULES_CACHE_DIR_KEY = "sonar.issuesReport.rules.cacheDir";
+  public static final String RULES_CACHE_MAX_AGE_KEY = "sonar.issuesReport.rules.cacheMaxAge";
+  public static final int RULES_CACHE_MAX_AGE_DEFAULT = 24;
+  public static final String RULES_FETCH_THREADS_KEY = "sonar.issuesReport.rules.fetchThreads";
+  public static final int RULES_FETCH_THREADS_DEFAULT = 4;
+  public static final String RULES_FETCH_TIMEOUT_KEY = "sonar.issuesReport.rules.fetchTimeout";
+  public static final int RULES_FETCH_TIMEOUT_DEFAULT = 10_000;
+  public static final String RULES_FAIL_SOFT_KEY = "sonar.issuesReport.rules.failSoft";
+  public static final String RULES_CATALOG_KEY = "sonar.issuesReport.rules.catalog";
+  public static final String RULES_WARM_UP_KEY = "sonar.issuesReport.rules.warmUp";
+
+  public static final String BUILD_THREADS_KEY = "sonar.issuesReport.build.threads";
+  public static final int BUILD_THREADS_DEFAULT = 1;
+  public static final String SPILL_THRESHOLD_KEY = "sonar.issuesReport.spill.threshold";
+
   public void define(Context context) {
     context.addExtensions(
         ReportJob.class,
@@ -64,7 +121,9 @@ public final class IssuesReportPlugin implements Plugin {
         RuleNameProvider.class,
         SourceProvider.class,
         InputFilesCollector.class,
+        ResourceIndex.class,
         HtmlPrinter.class,
+        TemplateEngine.class,
         ConsolePrinter.class);
   }
 }
@@ -19,10 +19,14 @@
  */
 package org.sonar.issuesreport;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.sonar.api.batch.postjob.PostJob;
 import org.sonar.api.batch.postjob.PostJobContext;
 import org.sonar.api.batch.postjob.PostJobDescriptor;
+import org.sonar.issuesreport.fs.ResourceIndex;
 import org.sonar.issuesreport.printer.ReportPrinter;
+import org.sonar.issuesreport.provider.RuleProvider;
 import org.sonar.issuesreport.report.IssuesReport;
 import org.sonar.issuesreport.report.IssuesReportBuilder;
 
@@ -30,11 +34,17 @@ import java.util.Arrays;
 
 public class ReportJob implements PostJob {
 
+  private static final Logger LOG = LoggerFactory.getLogger(ReportJob.class);
+
   private IssuesReportBuilder builder;
+  private RuleProvider ruleProvider;
+  private ResourceIndex resourceIndex;
   private ReportPrinter[] printers;
 
-  public ReportJob(IssuesReportBuilder builder, ReportPrinter[] printers) {
+  public ReportJob(IssuesReportBuilder builder, RuleProvider ruleProvider, ResourceIndex resourceIndex, ReportPrinter[] printers) {
     this.builder = builder;
+    this.ruleProvider = ruleProvider;
+    this.resourceIndex = resourceIndex;
     this.printers = printers;
   }
 
@@ -48,13 +58,24 @@ public class ReportJob implements PostJob {
   public void execute(PostJobContext context) {
     // For performance only initialize IssuesReport if there is on Printer enabled
     IssuesReport report = null;
-    for (ReportPrinter printer : printers) {
-      if (context.config().getBoolean(printer.getRequiredProperty()).orElse(Boolean.FALSE)) {
-        if (report == null) {
-          report = builder.buildReport(context);
+    try {
+      for (ReportPrinter printer : printers) {
+        if (context.config().getBoolean(printer.getRequiredProperty()).orElse(Boolean.FALSE)) {
+          if (report == null) {
+            report = builder.buildReport(context);
+          }
+          printer.print(report);
         }
-        printer.print(report);
       }
+    } finally {
+      if (report != null) {
+        report.close();
+      }
+      // Not needed anymore, and not to be kept by long-lived scanners
+      resourceIndex.clear();
+    }
+    if (report != null) {
+      LOG.info(ruleProvider.getStats().toString());
     }
   }
 }
@@ -22,20 +22,21 @@ package org.sonar.issuesreport.fs;
 import org.apache.commons.lang.StringUtils;
 import org.sonar.api.CoreProperties;
 import org.sonar.api.batch.ScannerSide;
-import org.sonar.api.batch.fs.FilePredicates;
+import org.sonar.api.batch.fs.FilePredicate;
 import org.sonar.api.batch.fs.FileSystem;
 import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.batch.rule.ActiveRule;
 import org.sonar.api.batch.sensor.Sensor;
 import org.sonar.api.batch.sensor.SensorContext;
 import org.sonar.api.batch.sensor.SensorDescriptor;
 import org.sonar.api.config.Configuration;
-import org.sonar.api.utils.log.Logger;
-import org.sonar.api.utils.log.Loggers;
 import org.sonar.issuesreport.IssuesReportPlugin;
+import org.sonar.issuesreport.provider.RuleProvider;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.function.Predicate;
+import java.util.stream.Collectors;
 
 import javax.annotation.CheckForNull;
 
@@ -44,13 +45,17 @@ import static org.sonar.issuesreport.fs.InputFilesCollector.InputFilesCollectorP
 @ScannerSide
 public class InputFilesCollector implements Sensor {
 
-  private static final Logger LOGGER = Loggers.get(InputFilesCollector.class);
+  private final RuleProvider ruleProvider;
+  private final ResourceIndex resourceIndex;
 
-  private static final Map<String, ResourceNode> RESOURCE_BY_KEY = new HashMap<>();
+  public InputFilesCollector(RuleProvider ruleProvider, ResourceIndex resourceIndex) {
+    this.ruleProvider = ruleProvider;
+    this.resourceIndex = resourceIndex;
+  }
 
   @CheckForNull
   public ResourceNode getResource(String componentKey) {
-    return RESOURCE_BY_KEY.get(componentKey);
+    return resourceIndex.get(componentKey);
   }
 
   @Override
@@ -59,23 +64,23 @@ public class InputFilesCollector implements Sensor {
         .onlyWhenConfiguration(shouldExecuteOnProject());
   }
 
-  private Iterable<InputFile> getInputFiles(SensorContext context) {
-    final FileSystem fileSystem = context.fileSystem();
-    final FilePredicates p = fileSystem.predicates();
-
-    return fileSystem.inputFiles(
-        p.doesNotMatchPathPatterns(context.config().getStringArray(CoreProperties.PROJECT_EXCLUSIONS_PROPERTY)));
+  /**
+   * Exclusions are only checked when the resource of a file is requested, see {@link ResourceIndex}.
+   */
+  private static FilePredicate getExclusions(SensorContext context) {
+    return context.fileSystem().predicates()
+      .doesNotMatchPathPatterns(context.config().getStringArray(CoreProperties.PROJECT_EXCLUSIONS_PROPERTY));
   }
 
   @Override
   public void execute(SensorContext context) {
-    getInputFiles(context).forEach(file -> {
-      if (LOGGER.isDebugEnabled()) {
-        LOGGER.debug(String.format("Path: %s", file.uri()));
-      }
-      ResourceNode resourceNode = new ResourceNode(file);
-      RESOURCE_BY_KEY.put(file.key(), resourceNode);
-    });
+    if (context.config().getBoolean(IssuesReportPlugin.RULES_WARM_UP_KEY).orElse(false)) {
+      ruleProvider.startWarmUp(context.activeRules().findAll().stream().map(ActiveRule::ruleKey).collect(Collectors.toList()));
+    }
+    FileSystem fileSystem = context.fileSystem();
+    List<InputFile> files = new ArrayList<>();
+    fileSystem.inputFiles(fileSystem.predicates().all()).forEach(files::add);
+    resourceIndex.addAll(files, getExclusions(context));
   }
 
   static class InputFilesCollectorPredicate {
@@ -0,0 +1,120 @@
+/*
+ * Sonar :: Issues Report :: Plugin
+ * Copyright (C) 2013 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.issuesreport.fs;
+
+import org.sonar.api.batch.InstantiationStrategy;
+import org.sonar.api.batch.ScannerSide;
+import org.sonar.api.batch.fs.FilePredicate;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.CheckForNull;
+
+/**
+ * Resources of the analysis, by key. Filled by {@link InputFilesCollector} for each module, possibly concurrently, and
+ * released by the report job once the report is printed.
+ * <p>
+ * Only references to input files are kept when they are collected. The {@link ResourceNode} of a file is built, and
+ * the exclusions of its module are checked, the first time the file is requested, which only happens for files having
+ * issues.
+ */
+@InstantiationStrategy(InstantiationStrategy.PER_BATCH)
+@ScannerSide
+public class ResourceIndex {
+
+  private static final Logger LOGGER = Loggers.get(ResourceIndex.class);
+
+  // Value of excluded files once they have been requested
+  private static final Object EXCLUDED = new Object();
+
+  // Values are either a Candidate, a ResourceNode or EXCLUDED
+  private volatile Map<String, Object> resourcesByKey;
+
+  @CheckForNull
+  public ResourceNode get(String key) {
+    Map<String, Object> map = resourcesByKey;
+    if (map == null) {
+      return null;
+    }
+    Object value = map.get(key);
+    if (value instanceof Candidate) {
+      value = map.computeIfPresent(key, (k, v) -> v instanceof Candidate ? ((Candidate) v).resolve() : v);
+    }
+    return value instanceof ResourceNode ? (ResourceNode) value : null;
+  }
+
+  /**
+   * Index input files of a module, {@code filter} being the exclusions of the module.
+   */
+  public void addAll(Collection<InputFile> files, FilePredicate filter) {
+    Map<String, Object> map = resourcesByKey;
+    if (map == null) {
+      synchronized (this) {
+        map = resourcesByKey;
+        if (map == null) {
+          // Sized from the files of the first module, usually the largest part of the project
+          map = new ConcurrentHashMap<>(files.size());
+          resourcesByKey = map;
+        }
+      }
+    }
+    for (InputFile file : files) {
+      map.put(file.key(), new Candidate(file, filter));
+    }
+  }
+
+  /**
+   * Number of indexed files, excluded or not.
+   */
+  public int size() {
+    Map<String, Object> map = resourcesByKey;
+    return map != null ? map.size() : 0;
+  }
+
+  public synchronized void clear() {
+    resourcesByKey = null;
+  }
+
+  private static final class Candidate {
+    private final InputFile file;
+    private final FilePredicate filter;
+
+    private Candidate(InputFile file, FilePredicate filter) {
+      this.file = file;
+      this.filter = filter;
+    }
+
+    private Object resolve() {
+      if (!filter.apply(file)) {
+        return EXCLUDED;
+      }
+      if (LOGGER.isDebugEnabled()) {
+        LOGGER.debug(String.format("Path: %s", file.uri()));
+      }
+      return new ResourceNode(file);
+    }
+  }
+
+}
@@ -81,7 +81,7 @@ public class ConsolePrinter implements ReportPrinter {
   }
 
   private void printNewIssues(StringBuilder sb, IssuesReport report, Severity severity, String severityLabel) {
-    IssueVariation issueVariation = report.getSummary().getTotalBySeverity().get(severity.toString());
+    IssueVariation issueVariation = report.getSummary().getTotal(severity);
     if (issueVariation != null) {
       int issueCount = issueVariation.getNewIssuesCount();
       if (issueCount > 0) {
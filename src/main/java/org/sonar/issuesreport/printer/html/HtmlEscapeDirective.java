@@ -0,0 +1,92 @@
+/*
+ * Sonar :: Issues Report :: Plugin
+ * Copyright (C) 2013 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.issuesreport.printer.html;
+
+import freemarker.core.Environment;
+import freemarker.template.TemplateDirectiveBody;
+import freemarker.template.TemplateDirectiveModel;
+import freemarker.template.TemplateException;
+import freemarker.template.TemplateModel;
+import freemarker.template.TemplateScalarModel;
+
+import org.apache.commons.lang.Entities;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+
+/**
+ * Template directive writing the HTML-escaped {@code value} parameter straight to the output, without building the
+ * escaped string. Output is the same as {@link org.apache.commons.lang.StringEscapeUtils#escapeHtml(String)}.
+ */
+class HtmlEscapeDirective implements TemplateDirectiveModel {
+
+  @Override
+  public void execute(Environment env, Map params, TemplateModel[] loopVars, TemplateDirectiveBody body) throws TemplateException, IOException {
+    TemplateScalarModel value = (TemplateScalarModel) params.get("value");
+    if (value != null) {
+      escape(value.getAsString(), env.getOut());
+    }
+  }
+
+  static void escape(String value, Writer out) throws IOException {
+    int length = value.length();
+    int start = 0;
+    while (start < length && !needsEscaping(value.charAt(start))) {
+      start++;
+    }
+    if (start == length) {
+      // Nothing to escape, which is the case of most lines
+      out.write(value);
+      return;
+    }
+    out.write(value, 0, start);
+    for (int i = start; i < length; i++) {
+      char c = value.charAt(i);
+      if (!needsEscaping(c)) {
+        out.write(c);
+        continue;
+      }
+      String entityName = Entities.HTML40.entityName(c);
+      if (entityName != null) {
+        out.write('&');
+        out.write(entityName);
+        out.write(';');
+      } else {
+        out.write("&#");
+        writeDecimal(c, out);
+        out.write(';');
+      }
+    }
+  }
+
+  private static boolean needsEscaping(char c) {
+    // Other ASCII characters have no HTML 4.0 entity
+    return c > 0x7F || c == '<' || c == '>' || c == '&' || c == '"';
+  }
+
+  private static void writeDecimal(int value, Writer out) throws IOException {
+    if (value >= 10) {
+      writeDecimal(value / 10, out);
+    }
+    out.write('0' + value % 10);
+  }
+
+}
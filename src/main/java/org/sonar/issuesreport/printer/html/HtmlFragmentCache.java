@@ -0,0 +1,302 @@
+/*
+ * Sonar :: Issues Report :: Plugin
+ * Copyright (C) 2013 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.issuesreport.printer.html;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import com.google.common.io.Resources;
+
+import freemarker.core.Environment;
+import freemarker.template.SimpleScalar;
+import freemarker.template.TemplateBooleanModel;
+import freemarker.template.TemplateDirectiveBody;
+import freemarker.template.TemplateDirectiveModel;
+import freemarker.template.TemplateException;
+import freemarker.template.TemplateModel;
+import freemarker.template.TemplateNumberModel;
+import freemarker.template.utility.DeepUnwrap;
+
+import org.apache.commons.io.FileUtils;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+import org.sonar.issuesreport.fs.ResourceNode;
+import org.sonar.issuesreport.report.IssueVariation;
+import org.sonar.issuesreport.report.ReportIssue;
+import org.sonar.issuesreport.report.ResourceReport;
+import org.sonar.issuesreport.report.RuleReport;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+
+/**
+ * Template directive caching the HTML rendered for each resource in the working directory, so that resources left
+ * unchanged since the previous analysis are not rendered again. Fragments are keyed by the content of the file, by
+ * everything the template displays about the resource and its issues, and by the template itself. Fragments that were
+ * not used by the last report are deleted by {@link #purge()}.
+ * <p>
+ * The position of the resource in the report is not part of the key, so that adding or removing a file does not
+ * invalidate the fragments of the following ones: the body gets it through its loop variable, which is rendered as
+ * {@link #INDEX_MARKER} in cached fragments and replaced when they are written out.
+ * <p>
+ * Without directory, the directive only renders its body.
+ */
+class HtmlFragmentCache implements TemplateDirectiveModel {
+
+  private static final Logger LOG = Loggers.get(HtmlFragmentCache.class);
+
+  static final String DIRNAME = "issues-report-fragments";
+
+  /**
+   * Stands for the index of the resource in cached fragments. Escaped content cannot produce it, but values printed as
+   * is by the template, like issue messages, could: such an occurrence would be replaced too. Its first character does
+   * not appear anywhere else in it, which {@link #copy(File, Writer, String)} relies on.
+   */
+  static final String INDEX_MARKER = "<!--resource-index-->";
+
+  @Nullable
+  private final File dir;
+  private byte[] templateHash;
+  // Content hashes by resource key, shared by the complete and the light reports
+  private final Map<String, byte[]> contentHashes = new HashMap<>();
+  private final Set<String> used = new HashSet<>();
+  private int hits;
+  private int misses;
+
+  HtmlFragmentCache(@Nullable File dir) {
+    this.dir = dir;
+  }
+
+  @Override
+  public void execute(Environment env, Map params, TemplateModel[] loopVars, TemplateDirectiveBody body) throws TemplateException, IOException {
+    String index = Integer.toString(((TemplateNumberModel) params.get("index")).getAsNumber().intValue());
+    if (dir == null) {
+      loopVars[0] = new SimpleScalar(index);
+      body.render(env.getOut());
+      return;
+    }
+    ResourceReport resourceReport = (ResourceReport) DeepUnwrap.unwrap((TemplateModel) params.get("resource"));
+    boolean complete = ((TemplateBooleanModel) params.get("complete")).getAsBoolean();
+
+    String name = key(resourceReport, complete);
+    used.add(name);
+    File file = new File(dir, name);
+    if (file.isFile()) {
+      hits++;
+      copy(file, env.getOut(), index);
+      return;
+    }
+    misses++;
+    loopVars[0] = new SimpleScalar(INDEX_MARKER);
+    File rendered = render(body, file);
+    if (rendered == null) {
+      loopVars[0] = new SimpleScalar(index);
+      body.render(env.getOut());
+      return;
+    }
+    copy(rendered, env.getOut(), index);
+    if (!rendered.equals(file)) {
+      FileUtils.deleteQuietly(rendered);
+    }
+  }
+
+  /**
+   * Whether the fragment of the resource is already cached, in which case rendering it does not read its source.
+   */
+  boolean contains(ResourceReport resourceReport, boolean complete) {
+    if (dir == null) {
+      return false;
+    }
+    try {
+      return new File(dir, key(resourceReport, complete)).isFile();
+    } catch (IOException e) {
+      LOG.debug("Unable to compute the key of the HTML fragment of " + resourceReport.getResourceNode(), e);
+      return false;
+    }
+  }
+
+  private String key(ResourceReport resourceReport, boolean complete) throws IOException {
+    Hasher hasher = Hashing.sha1().newHasher();
+    hasher.putBytes(templateHash()).putBoolean(complete);
+
+    ResourceNode resource = resourceReport.getResourceNode();
+    putString(hasher, resource.getKey());
+    putString(hasher, resourceReport.getName());
+    putString(hasher, resourceReport.getType());
+    byte[] contentHash = contentHash(resource);
+    if (contentHash != null) {
+      putString(hasher, resource.getEncoding().name());
+      hasher.putBytes(contentHash);
+    }
+
+    putVariation(hasher, resourceReport.getTotal());
+    for (RuleReport ruleReport : resourceReport.getRuleReports()) {
+      putString(hasher, ruleReport.getRule().getFullKey());
+      putString(hasher, ruleReport.getRule().getName());
+      putString(hasher, ruleReport.getSeverity());
+      putVariation(hasher, ruleReport.getTotal());
+    }
+    for (ReportIssue issue : resourceReport.getIssues()) {
+      putString(hasher, issue.key());
+      putString(hasher, issue.rule().getFullKey());
+      putString(hasher, issue.rule().getName());
+      putString(hasher, issue.message());
+      hasher.putInt(issue.line() != null ? issue.line() : 0);
+      hasher.putInt(issue.severity().ordinal());
+      hasher.putBoolean(issue.isNew());
+    }
+    return hasher.hash().toString();
+  }
+
+  @Nullable
+  private byte[] contentHash(ResourceNode resource) throws IOException {
+    byte[] hash = contentHashes.get(resource.getKey());
+    if (hash == null) {
+      File path = resource.getPath();
+      if (path == null || !path.isFile()) {
+        return null;
+      }
+      hash = Files.asByteSource(path).hash(Hashing.sha1()).asBytes();
+      contentHashes.put(resource.getKey(), hash);
+    }
+    return hash;
+  }
+
+  private byte[] templateHash() throws IOException {
+    if (templateHash == null) {
+      templateHash = Resources.asByteSource(Resources.getResource(HtmlPrinter.class, TemplateEngine.TEMPLATE)).hash(Hashing.sha1()).asBytes();
+    }
+    return templateHash;
+  }
+
+  private static void putString(Hasher hasher, @Nullable String value) {
+    if (value == null) {
+      hasher.putInt(-1);
+    } else {
+      hasher.putInt(value.length());
+      hasher.putString(value, StandardCharsets.UTF_8);
+    }
+  }
+
+  private static void putVariation(Hasher hasher, IssueVariation variation) {
+    hasher.putInt(variation.getCountInCurrentAnalysis());
+    hasher.putInt(variation.getNewIssuesCount());
+    hasher.putInt(variation.getResolvedIssuesCount());
+  }
+
+  /**
+   * Copy a fragment to the output, replacing {@link #INDEX_MARKER} on the fly so that fragments are never loaded whole.
+   */
+  private static void copy(File file, Writer out, String index) throws IOException {
+    char[] buffer = new char[8192];
+    int matched = 0;
+    try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+      int read;
+      while ((read = reader.read(buffer)) >= 0) {
+        for (int i = 0; i < read; i++) {
+          char c = buffer[i];
+          if (c == INDEX_MARKER.charAt(matched)) {
+            matched++;
+            if (matched == INDEX_MARKER.length()) {
+              out.write(index);
+              matched = 0;
+            }
+          } else {
+            // No partial match can start within the matched chars, the first one of the marker is unique
+            out.write(INDEX_MARKER, 0, matched);
+            matched = 0;
+            if (c == INDEX_MARKER.charAt(0)) {
+              matched = 1;
+            } else {
+              out.write(c);
+            }
+          }
+        }
+      }
+    }
+    out.write(INDEX_MARKER, 0, matched);
+  }
+
+  /**
+   * Render the body to the fragment file, through a temporary file so that a fragment is never read half written.
+   *
+   * @return the fragment file, or the temporary file if it could not be renamed, or null if it could not be written
+   */
+  @CheckForNull
+  private static File render(TemplateDirectiveBody body, File file) throws TemplateException, IOException {
+    File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+    try {
+      Files.createParentDirs(file);
+      try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp), StandardCharsets.UTF_8))) {
+        body.render(writer);
+      }
+    } catch (IOException e) {
+      LOG.debug("Unable to write HTML fragment " + file, e);
+      FileUtils.deleteQuietly(tmp);
+      return null;
+    } catch (TemplateException | RuntimeException e) {
+      FileUtils.deleteQuietly(tmp);
+      throw e;
+    }
+    return tmp.renameTo(file) ? file : tmp;
+  }
+
+  /**
+   * Delete the fragments that were not used since this cache was created.
+   */
+  void purge() {
+    if (dir == null) {
+      return;
+    }
+    File[] files = dir.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        if (!used.contains(file.getName())) {
+          FileUtils.deleteQuietly(file);
+        }
+      }
+    }
+    LOG.info(String.format("HTML fragments: %d reused, %d rendered", hits, misses));
+  }
+
+  int getHits() {
+    return hits;
+  }
+
+  int getMisses() {
+    return misses;
+  }
+
+}
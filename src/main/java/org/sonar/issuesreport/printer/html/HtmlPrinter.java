@@ -21,7 +21,6 @@ package org.sonar.issuesreport.printer.html;
 
 import com.google.common.collect.Maps;
 
-import freemarker.log.Logger;
 import freemarker.template.Template;
 
 import org.apache.commons.io.FileUtils;
@@ -32,8 +31,12 @@ import org.sonar.api.utils.log.Loggers;
 import org.sonar.issuesreport.IssuesReportPlugin;
 import org.sonar.issuesreport.printer.ReportPrinter;
 import org.sonar.issuesreport.provider.RuleNameProvider;
+import org.sonar.issuesreport.fs.ResourceNode;
+import org.sonar.issuesreport.provider.SourceLines;
 import org.sonar.issuesreport.provider.SourceProvider;
 import org.sonar.issuesreport.report.IssuesReport;
+import org.sonar.issuesreport.report.LineRange;
+import org.sonar.issuesreport.report.ResourceReport;
 
 import java.io.File;
 import java.io.FileOutputStream;
@@ -43,21 +46,29 @@ import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 public class HtmlPrinter implements ReportPrinter {
 
   private static final org.sonar.api.utils.log.Logger LOG = Loggers.get(HtmlPrinter.class);
+  private static final HtmlEscapeDirective ESCAPE_HTML = new HtmlEscapeDirective();
 
   private final RuleNameProvider ruleNameProvider;
+  private final TemplateEngine templateEngine;
   private final FileSystem fs;
   private Configuration settings;
 
   private SourceProvider sourceProvider;
+  // Shared by the reports of a single print
+  private HtmlFragmentCache fragmentCache = new HtmlFragmentCache(null);
 
-  public HtmlPrinter(RuleNameProvider ruleNameProvider, SourceProvider sourceProvider, FileSystem fs, Configuration settings) {
+  public HtmlPrinter(RuleNameProvider ruleNameProvider, SourceProvider sourceProvider, TemplateEngine templateEngine, FileSystem fs,
+    Configuration settings) {
     this.ruleNameProvider = ruleNameProvider;
     this.sourceProvider = sourceProvider;
+    this.templateEngine = templateEngine;
     this.fs = fs;
     this.settings = settings;
   }
@@ -70,7 +81,67 @@ public class HtmlPrinter implements ReportPrinter {
     return settings.getBoolean(IssuesReportPlugin.HTML_REPORT_LIGHTMODE_ONLY).orElse(Boolean.FALSE);
   }
 
+  private boolean isFragmentCacheEnabled() {
+    return settings.getBoolean(IssuesReportPlugin.HTML_FRAGMENT_CACHE_KEY).orElse(Boolean.FALSE);
+  }
+
   public void print(IssuesReport report) {
+    if (isFragmentCacheEnabled()) {
+      fragmentCache = new HtmlFragmentCache(new File(fs.workDir(), HtmlFragmentCache.DIRNAME));
+    }
+    try {
+      printReports(report);
+    } finally {
+      fragmentCache = new HtmlFragmentCache(null);
+      sourceProvider.clearCache();
+    }
+    if (LOG.isDebugEnabled()) {
+      LOG.debug(templateEngine.toString());
+    }
+  }
+
+  private void writeReport(IssuesReport report, File toFile, boolean complete) {
+    startPrefetch(report, complete);
+    try {
+      writeToFile(report, toFile, complete);
+    } finally {
+      sourceProvider.stopPrefetch();
+    }
+  }
+
+  /**
+   * Read in the background the sources the report will display: the light one skips resources without new issues, and
+   * cached fragments do not need their source.
+   */
+  private void startPrefetch(IssuesReport report, boolean complete) {
+    int prefetchThreads = settings.getInt(IssuesReportPlugin.HTML_PREFETCH_THREADS_KEY).orElse(0);
+    // Only frozen reports can be read by several threads
+    if (prefetchThreads <= 0 || !report.isFrozen()) {
+      return;
+    }
+    List<ResourceNode> resources = new ArrayList<>();
+    for (ResourceReport resourceReport : report.getResourceReports()) {
+      if ((complete || resourceReport.getTotal().getNewIssuesCount() > 0) && !fragmentCache.contains(resourceReport, complete)) {
+        resources.add(resourceReport.getResourceNode());
+      }
+    }
+    Map<ResourceNode, ResourceReport> resourceReports = report.getResourceReportsByResource();
+    sourceProvider.startPrefetch(resources, prefetchThreads,
+      (resource, source) -> preload(resourceReports.get(resource), source, complete));
+  }
+
+  /**
+   * Decode the lines the report will display.
+   */
+  private static void preload(ResourceReport resourceReport, SourceLines source, boolean complete) {
+    for (LineRange range : resourceReport.getDisplayableLineRanges(complete, source.getLineCount())) {
+      for (int line = range.getFrom(); line <= range.getTo(); line++) {
+        source.getLine(line);
+      }
+    }
+  }
+
+  private void printReports(IssuesReport report) {
     File reportFileDir = getReportFileDir();
     String reportName = settings.get(IssuesReportPlugin.HTML_REPORT_NAME_KEY).orElse(null);
     if (!isLightModeOnly()) {
@@ -78,14 +149,15 @@ public class HtmlPrinter implements ReportPrinter {
       if (LOG.isDebugEnabled()) {
         LOG.debug(String.format("Generating HTML Report to: %s", reportFile.getAbsolutePath()));
       }
-      writeToFile(report, reportFile, true);
+      writeReport(report, reportFile, true);
       LOG.info(String.format("HTML Issues Report generated: %s", reportFile.getAbsolutePath()));
     }
     File lightReportFile = new File(reportFileDir, reportName + "-light.html");
     if (LOG.isDebugEnabled()) {
       LOG.debug(String.format("Generating Light HTML Report to: %s", lightReportFile.getAbsolutePath()));
     }
-    writeToFile(report, lightReportFile, false);
+    writeReport(report, lightReportFile, false);
+    fragmentCache.purge();
     LOG.info(String.format("Light HTML Issues Report generated: %s", lightReportFile.getAbsolutePath()));
     try {
       copyDependencies(reportFileDir);
@@ -117,17 +189,15 @@ public class HtmlPrinter implements ReportPrinter {
     Writer writer = null;
     FileOutputStream fos = null;
     try {
-      Logger.selectLoggerLibrary(Logger.LIBRARY_NONE);
-      freemarker.template.Configuration cfg = new freemarker.template.Configuration();
-      cfg.setClassForTemplateLoading(HtmlPrinter.class, "");
-
       Map<String, Object> root = Maps.newHashMap();
       root.put("report", report);
       root.put("ruleNameProvider", ruleNameProvider);
       root.put("sourceProvider", sourceProvider);
       root.put("complete", complete);
+      root.put("fragmentCache", fragmentCache);
+      root.put("escapeHtml", ESCAPE_HTML);
 
-      Template template = cfg.getTemplate("issuesreport.ftl");
+      Template template = templateEngine.getTemplate();
       fos = new FileOutputStream(toFile);
       writer = new OutputStreamWriter(fos, fs.encoding());
       template.process(root, writer);
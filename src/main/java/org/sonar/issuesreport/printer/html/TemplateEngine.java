@@ -0,0 +1,102 @@
+/*
+ * Sonar :: Issues Report :: Plugin
+ * Copyright (C) 2013 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.issuesreport.printer.html;
+
+import freemarker.log.Logger;
+import freemarker.template.Configuration;
+import freemarker.template.DefaultObjectWrapper;
+import freemarker.template.Template;
+
+import org.sonar.api.batch.InstantiationStrategy;
+import org.sonar.api.batch.ScannerSide;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * FreeMarker configuration and parsed HTML report template, built once and shared by all the reports of the
+ * analysis. Templates are thread-safe once parsed.
+ */
+@InstantiationStrategy(InstantiationStrategy.PER_BATCH)
+@ScannerSide
+public class TemplateEngine {
+
+  static final String TEMPLATE = "issuesreport.ftl";
+
+  private Template template;
+  private long firstLoadNanos;
+  private int cachedLoads;
+  private long cachedLoadNanos;
+
+  public synchronized Template getTemplate() throws IOException {
+    long start = System.nanoTime();
+    if (template == null) {
+      template = loadTemplate();
+      firstLoadNanos = System.nanoTime() - start;
+    } else {
+      cachedLoads++;
+      cachedLoadNanos += System.nanoTime() - start;
+    }
+    return template;
+  }
+
+  private static Template loadTemplate() throws IOException {
+    try {
+      Logger.selectLoggerLibrary(Logger.LIBRARY_NONE);
+    } catch (ClassNotFoundException e) {
+      // Not thrown for LIBRARY_NONE
+      throw new IllegalStateException(e);
+    }
+    Configuration cfg = new Configuration();
+    cfg.setClassForTemplateLoading(HtmlPrinter.class, "");
+    // Reflection data of the report classes is cached by the wrapper
+    cfg.setObjectWrapper(new DefaultObjectWrapper());
+    // The template is in the plugin jar: neither localized variants nor updates to look for
+    cfg.setLocalizedLookup(false);
+    cfg.setTemplateUpdateDelay(Integer.MAX_VALUE);
+    return cfg.getTemplate(TEMPLATE);
+  }
+
+  /**
+   * Time taken to parse the template, in milliseconds, or 0 if it was not loaded yet.
+   */
+  public synchronized long getFirstLoadMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(firstLoadNanos);
+  }
+
+  /**
+   * Number of calls to {@link #getTemplate()} served by the already parsed template.
+   */
+  public synchronized int getCachedLoads() {
+    return cachedLoads;
+  }
+
+  public synchronized long getCachedLoadMicros() {
+    return TimeUnit.NANOSECONDS.toMicros(cachedLoadNanos);
+  }
+
+  @Override
+  public synchronized String toString() {
+    return String.format(Locale.ENGLISH, "Template: loaded in %d ms, then %d times from cache in %d us", getFirstLoadMillis(),
+      cachedLoads, getCachedLoadMicros());
+  }
+
+}
@@ -0,0 +1,130 @@
+/*
+ * Sonar :: Issues Report :: Plugin
+ * Copyright (C) 2013 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.issuesreport.provider;
+
+import com.google.common.hash.Hashing;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.rule.RuleKey;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Rule metadata persisted between analyses. There is one file per server, and only what the report needs
+ * (the rule name) is stored, along with the time it was fetched.
+ */
+class RuleCacheFile {
+
+  private static final Logger LOG = LoggerFactory.getLogger(RuleCacheFile.class);
+
+  /**
+   * To be incremented each time the file layout changes. Files written with another version are ignored.
+   */
+  static final int VERSION = 1;
+
+  private final File file;
+  private final String serverUrl;
+
+  RuleCacheFile(File dir, String serverUrl) {
+    this.serverUrl = serverUrl;
+    String serverHash = Hashing.sha256().hashString(serverUrl, StandardCharsets.UTF_8).toString().substring(0, 16);
+    this.file = new File(dir, "issues-report-rules-" + serverHash + ".bin");
+  }
+
+  File getFile() {
+    return file;
+  }
+
+  Map<RuleKey, Entry> read() {
+    Map<RuleKey, Entry> entries = new HashMap<>();
+    if (!file.isFile()) {
+      return entries;
+    }
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+      if (in.readInt() != VERSION || !serverUrl.equals(in.readUTF())) {
+        LOG.debug("Ignoring outdated rule cache {}", file);
+        return entries;
+      }
+      int count = in.readInt();
+      for (int i = 0; i < count; i++) {
+        RuleKey ruleKey = RuleKey.parse(in.readUTF());
+        String name = in.readUTF();
+        long fetchedAt = in.readLong();
+        entries.put(ruleKey, new Entry(name, fetchedAt));
+      }
+    } catch (IOException | RuntimeException e) {
+      LOG.warn("Unable to read rule cache {}", file, e);
+      entries.clear();
+    }
+    return entries;
+  }
+
+  void write(Map<RuleKey, Entry> entries) {
+    try {
+      FileUtils.forceMkdir(file.getParentFile());
+      File tmpFile = new File(file.getParentFile(), file.getName() + ".tmp");
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+        out.writeInt(VERSION);
+        out.writeUTF(serverUrl);
+        out.writeInt(entries.size());
+        for (Map.Entry<RuleKey, Entry> entry : entries.entrySet()) {
+          out.writeUTF(entry.getKey().toString());
+          out.writeUTF(entry.getValue().getName());
+          out.writeLong(entry.getValue().getFetchedAt());
+        }
+      }
+      Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException e) {
+      LOG.warn("Unable to write rule cache {}", file, e);
+    }
+  }
+
+  static final class Entry {
+    private final String name;
+    private final long fetchedAt;
+
+    Entry(String name, long fetchedAt) {
+      this.name = name;
+      this.fetchedAt = fetchedAt;
+    }
+
+    String getName() {
+      return name;
+    }
+
+    long getFetchedAt() {
+      return fetchedAt;
+    }
+  }
+}
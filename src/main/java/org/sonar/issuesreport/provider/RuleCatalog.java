@@ -0,0 +1,65 @@
+/*
+ * Sonar :: Issues Report :: Plugin
+ * Copyright (C) 2013 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.issuesreport.provider;
+
+import org.sonar.api.rule.RuleKey;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.function.BiConsumer;
+
+/**
+ * Local list of rule names, used to resolve rules without any call to the server. The file is UTF-8 text: a header
+ * line, then one rule per line made of the rule key and the rule name separated by a tab.
+ *
+ * @see RuleCatalogExporter
+ */
+final class RuleCatalog {
+
+  static final String HEADER = "# Issues Report rule catalog v1";
+  static final char SEPARATOR = '\t';
+
+  private RuleCatalog() {
+  }
+
+  /**
+   * Stream the rules of the catalog to the given consumer, and return the number of rules read.
+   */
+  static int read(File file, BiConsumer<RuleKey, String> consumer) throws IOException {
+    try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+      if (!HEADER.equals(reader.readLine())) {
+        throw new IllegalStateException("Unsupported rule catalog format: " + file);
+      }
+      int count = 0;
+      String line;
+      while ((line = reader.readLine()) != null) {
+        int separatorIndex = line.indexOf(SEPARATOR);
+        if (separatorIndex > 0) {
+          consumer.accept(RuleKey.parse(line.substring(0, separatorIndex)), line.substring(separatorIndex + 1));
+          count++;
+        }
+      }
+      return count;
+    }
+  }
+}
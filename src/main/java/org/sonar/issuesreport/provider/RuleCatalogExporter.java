@@ -0,0 +1,156 @@
+/*
+ * Sonar :: Issues Report :: Plugin
+ * Copyright (C) 2013 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.issuesreport.provider;
+
+import org.sonarqube.ws.Common;
+import org.sonarqube.ws.MediaTypes;
+import org.sonarqube.ws.Rules;
+import org.sonarqube.ws.client.GetRequest;
+import org.sonarqube.ws.client.HttpConnector;
+import org.sonarqube.ws.client.WsClient;
+import org.sonarqube.ws.client.WsClientFactories;
+
+import javax.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Write the {@link RuleCatalog} of all the rules of a server, paging through api/rules/search. It can be run
+ * from the plugin jar on a machine that has access to the server:
+ * <pre>
+ * java -cp sonar-issues-report-plugin.jar org.sonar.issuesreport.provider.RuleCatalogExporter &lt;server url&gt; &lt;catalog file&gt; [login [password]]
+ * </pre>
+ * Only the sonar-ws client is used here, as the plugin API is not available outside of a scanner.
+ */
+public class RuleCatalogExporter {
+
+  static final int PAGE_SIZE = 500;
+
+  /**
+   * api/rules/search does not return results beyond this index, whatever the page size.
+   */
+  static final int SEARCH_WINDOW = 10_000;
+
+  private static final String REPOSITORIES_FACET = "repositories";
+
+  private final WsClient wsClient;
+
+  public RuleCatalogExporter(WsClient wsClient) {
+    this.wsClient = wsClient;
+  }
+
+  /**
+   * Servers having more rules than the search window are exported repository by repository. Rules that still cannot
+   * be reached, in a repository larger than the window, are reported on the standard error and left out.
+   *
+   * @return the number of exported rules
+   */
+  public int export(Writer writer) throws IOException {
+    writer.write(RuleCatalog.HEADER);
+    writer.write('\n');
+    Rules.SearchResponse firstPage = searchRules(null, 1);
+    if (firstPage.getTotal() <= SEARCH_WINDOW) {
+      return exportPages(writer, null, firstPage);
+    }
+    int count = 0;
+    long repositoriesTotal = 0;
+    for (Common.FacetValue repository : repositories(firstPage)) {
+      count += exportPages(writer, repository.getVal(), searchRules(repository.getVal(), 1));
+      repositoriesTotal += repository.getCount();
+    }
+    if (repositoriesTotal < firstPage.getTotal()) {
+      warn((firstPage.getTotal() - repositoriesTotal) + " rules are not in the repositories returned by the server and were not exported");
+    }
+    return count;
+  }
+
+  private int exportPages(Writer writer, @Nullable String repository, Rules.SearchResponse firstPage) throws IOException {
+    Rules.SearchResponse response = firstPage;
+    int count = 0;
+    for (int page = 1; ; page++) {
+      for (Rules.Rule rule : response.getRulesList()) {
+        writer.write(rule.getKey());
+        writer.write(RuleCatalog.SEPARATOR);
+        writer.write(rule.getName().replace('\t', ' ').replace('\r', ' ').replace('\n', ' '));
+        writer.write('\n');
+      }
+      count += response.getRulesCount();
+      if (response.getRulesCount() < PAGE_SIZE) {
+        return count;
+      }
+      if ((long) (page + 1) * PAGE_SIZE > SEARCH_WINDOW) {
+        warn("Only the first " + count + " rules" + (repository != null ? (" of repository " + repository) : "")
+          + " were exported, api/rules/search does not return more than " + SEARCH_WINDOW + " results");
+        return count;
+      }
+      response = searchRules(repository, page + 1);
+    }
+  }
+
+  private static List<Common.FacetValue> repositories(Rules.SearchResponse response) {
+    for (Common.Facet facet : response.getFacets().getFacetsList()) {
+      if (REPOSITORIES_FACET.equals(facet.getProperty())) {
+        return facet.getValuesList();
+      }
+    }
+    return Collections.emptyList();
+  }
+
+  private Rules.SearchResponse searchRules(@Nullable String repository, int page) throws IOException {
+    GetRequest getRequest = new GetRequest("api/rules/search")
+        .setParam("f", "name,repo")
+        .setParam("ps", PAGE_SIZE)
+        .setParam("p", page)
+        .setMediaType(MediaTypes.PROTOBUF);
+    if (repository == null) {
+      getRequest.setParam("facets", REPOSITORIES_FACET);
+    } else {
+      getRequest.setParam(REPOSITORIES_FACET, repository);
+    }
+    return Rules.SearchResponse.parseFrom(wsClient.wsConnector().call(getRequest).failIfNotSuccessful().contentStream());
+  }
+
+  private static void warn(String message) {
+    // Run outside of a scanner: there is no logger
+    System.err.println("WARN: " + message);
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length < 2) {
+      System.err.println("Usage: RuleCatalogExporter <server url> <catalog file> [login [password]]");
+      System.exit(1);
+    }
+    HttpConnector httpConnector = HttpConnector.newBuilder()
+        .url(args[0])
+        .credentials(args.length > 2 ? args[2] : null, args.length > 3 ? args[3] : null)
+        .build();
+    RuleCatalogExporter exporter = new RuleCatalogExporter(WsClientFactories.getDefault().newClient(httpConnector));
+    File catalog = new File(args[1]);
+    try (Writer writer = Files.newBufferedWriter(catalog.toPath(), StandardCharsets.UTF_8)) {
+      System.out.println(exporter.export(writer) + " rules exported to " + catalog.getAbsolutePath());
+    }
+  }
+}
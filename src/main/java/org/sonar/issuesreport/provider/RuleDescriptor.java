@@ -0,0 +1,114 @@
+/*
+ * Sonar :: Issues Report :: Plugin
+ * Copyright (C) 2013 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.issuesreport.provider;
+
+import org.apache.commons.lang.builder.ToStringBuilder;
+import org.sonar.api.rule.RuleKey;
+
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * What the report needs to know about a rule. {@link RuleProvider} gives a dense integer id to every rule requested by
+ * the report, stable for the whole analysis. Several instances may exist for the same rule, for example a placeholder and then the rule
+ * fetched from the server, so equality only relies on the rule key.
+ */
+@Immutable
+public final class RuleDescriptor {
+
+  private final int id;
+  private final RuleKey ruleKey;
+  private final String key;
+  private final String name;
+  private final boolean placeholder;
+  private final int hashCode;
+
+  public RuleDescriptor(int id, RuleKey ruleKey, String name) {
+    this(id, ruleKey, name, false);
+  }
+
+  RuleDescriptor(int id, RuleKey ruleKey, String name, boolean placeholder) {
+    this.id = id;
+    this.ruleKey = ruleKey;
+    this.key = ruleKey.toString();
+    this.name = name;
+    this.placeholder = placeholder;
+    this.hashCode = key.hashCode();
+  }
+
+  public int getId() {
+    return id;
+  }
+
+  public RuleKey ruleKey() {
+    return ruleKey;
+  }
+
+  public String getRepositoryKey() {
+    return ruleKey.repository();
+  }
+
+  public String getKey() {
+    return ruleKey.rule();
+  }
+
+  /**
+   * Same as {@code ruleKey().toString()}, without allocating.
+   */
+  public String getFullKey() {
+    return key;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * True when the rule could not be fetched and is named after its key. It may be resolved later in the analysis.
+   */
+  public boolean isPlaceholder() {
+    return placeholder;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    RuleDescriptor that = (RuleDescriptor) o;
+    return hashCode == that.hashCode && key.equals(that.key);
+  }
+
+  @Override
+  public int hashCode() {
+    return hashCode;
+  }
+
+  @Override
+  public String toString() {
+    return new ToStringBuilder(this).
+      append("id", id).
+      append("key", key).
+      append("name", name).
+      toString();
+  }
+}
@@ -0,0 +1,142 @@
+/*
+ * Sonar :: Issues Report :: Plugin
+ * Copyright (C) 2013 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.issuesreport.provider;
+
+import com.google.common.cache.CacheStats;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters about rule resolution, updated concurrently by {@link RuleProvider}.
+ */
+public class RuleFetchStats {
+
+  /**
+   * Upper bounds, in milliseconds, of the buckets of the api/rules/show latency histogram. Last bucket is unbounded.
+   */
+  static final long[] LATENCY_BUCKETS = {10, 25, 50, 100, 250, 500, 1000, 2500, 5000, Long.MAX_VALUE};
+
+  private final AtomicLong httpCalls = new AtomicLong();
+  private final AtomicLong bytesReceived = new AtomicLong();
+  private final AtomicLong failures = new AtomicLong();
+  private final AtomicLong showCalls = new AtomicLong();
+  private final AtomicLong showTotalMillis = new AtomicLong();
+  private final AtomicLong showMaxMillis = new AtomicLong();
+  private final AtomicLongArray showLatencies = new AtomicLongArray(LATENCY_BUCKETS.length);
+  private volatile CacheStats cacheStats = new CacheStats(0, 0, 0, 0, 0, 0);
+
+  void recordHttpCall(long bytes) {
+    httpCalls.incrementAndGet();
+    bytesReceived.addAndGet(bytes);
+  }
+
+  void recordFailure() {
+    failures.incrementAndGet();
+  }
+
+  void recordShowLatency(long millis) {
+    showCalls.incrementAndGet();
+    showTotalMillis.addAndGet(millis);
+    showMaxMillis.accumulateAndGet(millis, Math::max);
+    int bucket = 0;
+    while (millis > LATENCY_BUCKETS[bucket]) {
+      bucket++;
+    }
+    showLatencies.incrementAndGet(bucket);
+  }
+
+  void updateCacheStats(CacheStats stats) {
+    this.cacheStats = stats;
+  }
+
+  public long getCacheHits() {
+    return cacheStats.hitCount();
+  }
+
+  public long getCacheMisses() {
+    return cacheStats.missCount();
+  }
+
+  public double getCacheHitRate() {
+    return cacheStats.hitRate();
+  }
+
+  public long getHttpCalls() {
+    return httpCalls.get();
+  }
+
+  public long getBytesReceived() {
+    return bytesReceived.get();
+  }
+
+  public long getFailures() {
+    return failures.get();
+  }
+
+  public long getShowCalls() {
+    return showCalls.get();
+  }
+
+  public long getShowMaxMillis() {
+    return showMaxMillis.get();
+  }
+
+  public long getShowMeanMillis() {
+    long calls = showCalls.get();
+    return calls == 0 ? 0 : (showTotalMillis.get() / calls);
+  }
+
+  /**
+   * Upper bound of the latency histogram bucket holding the given percentile of api/rules/show calls, or
+   * {@link Long#MAX_VALUE} if it falls in the last, unbounded, bucket.
+   */
+  public long getShowLatencyPercentile(double percentile) {
+    long calls = showCalls.get();
+    if (calls == 0) {
+      return 0;
+    }
+    long threshold = (long) Math.ceil(calls * percentile / 100);
+    long seen = 0;
+    for (int i = 0; i < LATENCY_BUCKETS.length; i++) {
+      seen += showLatencies.get(i);
+      if (seen >= threshold) {
+        return LATENCY_BUCKETS[i];
+      }
+    }
+    return LATENCY_BUCKETS[LATENCY_BUCKETS.length - 1];
+  }
+
+  @Override
+  public String toString() {
+    long lookups = getCacheHits() + getCacheMisses();
+    String hitRate = lookups == 0 ? "n/a" : String.format(Locale.ENGLISH, "%.1f%%", getCacheHitRate() * 100);
+    return String.format(Locale.ENGLISH, "Rules: %d lookups, %s cache hits, %d HTTP calls, %d bytes received, %d failures, "
+                           + "api/rules/show mean %d ms, p95 <= %s ms, max %d ms",
+                         lookups, hitRate, getHttpCalls(), getBytesReceived(),
+                         getFailures(), getShowMeanMillis(), formatBound(getShowLatencyPercentile(95)), getShowMaxMillis());
+  }
+
+  private static String formatBound(long bound) {
+    return bound == Long.MAX_VALUE ? "inf" : Long.toString(bound);
+  }
+
+}
@@ -22,37 +22,66 @@ package org.sonar.issuesreport.provider;
 import org.apache.commons.lang.StringEscapeUtils;
 import org.sonar.api.batch.ScannerSide;
 import org.sonar.api.rule.RuleKey;
-import org.sonar.api.rules.Rule;
 
 import javax.annotation.CheckForNull;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 @ScannerSide
 public class RuleNameProvider {
   private RuleProvider ruleProvider;
+  // Escaped names are cached per rule, the template asks for them for every issue. The lookup is done
+  // outside of the map so that a remote rule fetch never holds a lock. Placeholder names are not cached, the
+  // rule may be resolved later.
+  private final Map<RuleKey, String> htmlNames = new ConcurrentHashMap<>();
+  private final Map<String, String> jsNames = new ConcurrentHashMap<>();
 
   public RuleNameProvider(RuleProvider ruleProvider) {
     this.ruleProvider = ruleProvider;
   }
 
+  /**
+   * Escaped name of the rule, or null when the rule has no known name. Null values are not cached.
+   */
   @CheckForNull
-  private String nameFromDB(RuleKey ruleKey) {
-    Rule r = ruleProvider.getRule(ruleKey);
-    return r != null ? r.getName() : null;
+  private String htmlNameFromDB(RuleKey ruleKey) {
+    String escaped = htmlNames.get(ruleKey);
+    if (escaped == null) {
+      RuleDescriptor rule = ruleProvider.getRule(ruleKey);
+      if (rule != null && rule.getName() != null) {
+        escaped = StringEscapeUtils.escapeHtml(rule.getName());
+        if (!rule.isPlaceholder()) {
+          htmlNames.put(ruleKey, escaped);
+        }
+      }
+    }
+    return escaped;
   }
 
   public String nameForHTML(RuleKey ruleKey) {
-    String name = nameFromDB(ruleKey);
-    return StringEscapeUtils.escapeHtml(name != null ? name : ruleKey.toString());
+    String name = htmlNameFromDB(ruleKey);
+    return name != null ? name : StringEscapeUtils.escapeHtml(ruleKey.toString());
   }
 
   public String nameForJS(String ruleKey) {
-    String name = nameFromDB(RuleKey.parse(ruleKey));
-    return StringEscapeUtils.escapeJavaScript(name != null ? name : ruleKey);
+    String escaped = jsNames.get(ruleKey);
+    if (escaped == null) {
+      RuleDescriptor rule = ruleProvider.getRule(RuleKey.parse(ruleKey));
+      if (rule == null || rule.getName() == null) {
+        return StringEscapeUtils.escapeJavaScript(ruleKey);
+      }
+      escaped = StringEscapeUtils.escapeJavaScript(rule.getName());
+      if (!rule.isPlaceholder()) {
+        jsNames.put(ruleKey, escaped);
+      }
+    }
+    return escaped;
   }
 
-  public String nameForHTML(Rule rule) {
-    String name = nameFromDB(RuleKey.of(rule.getRepositoryKey(), rule.getKey()));
-    return StringEscapeUtils.escapeHtml(name != null ? name : rule.getName());
+  public String nameForHTML(RuleDescriptor rule) {
+    String name = htmlNameFromDB(rule.ruleKey());
+    return name != null ? name : StringEscapeUtils.escapeHtml(rule.getName());
   }
 
 }
@@ -1,15 +1,21 @@
 package org.sonar.issuesreport.provider;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Iterables;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.sonar.api.CoreProperties;
 import org.sonar.api.batch.InstantiationStrategy;
 import org.sonar.api.batch.ScannerSide;
+import org.sonar.api.batch.bootstrap.ProjectReactor;
 import org.sonar.api.config.Configuration;
 import org.sonar.api.rule.RuleKey;
-import org.sonar.api.rules.Rule;
-import org.sonar.api.rules.RuleParam;
+import org.sonar.issuesreport.IssuesReportPlugin;
 import org.sonarqube.ws.MediaTypes;
 import org.sonarqube.ws.Rules;
 import org.sonarqube.ws.client.GetRequest;
@@ -19,121 +25,432 @@ import org.sonarqube.ws.client.WsClient;
 import org.sonarqube.ws.client.WsClientFactories;
 import org.sonarqube.ws.client.WsResponse;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 @InstantiationStrategy(InstantiationStrategy.PER_BATCH)
 @ScannerSide
 public class RuleProvider {
 
+  private static final Logger LOG = LoggerFactory.getLogger(RuleProvider.class);
+
+  /**
+   * Number of rule keys sent in a single api/rules/search call. Keeps the query string well below usual URL limits.
+   */
+  static final int SEARCH_PAGE_SIZE = 100;
+
+  /**
+   * How long a rule that could not be fetched is considered as missing before asking the server again.
+   */
+  static final long FAILURE_TTL_SECONDS = 60;
+
   private final WsClient wsClient;
-  private Cache<RuleKey, Rule> ruleCache = CacheBuilder.newBuilder().build();
+  // Rule names by key. Descriptors, and their ids, are only created for the rules requested by the report
+  private final Cache<RuleKey, String> ruleCache = CacheBuilder.newBuilder().recordStats().build();
+  private final Map<RuleKey, RuleDescriptor> descriptors = new ConcurrentHashMap<>();
+  private final Map<RuleKey, Integer> ruleIds = new ConcurrentHashMap<>();
+  private final AtomicInteger nextRuleId = new AtomicInteger();
+  private final Map<RuleKey, Long> fetchDates = new ConcurrentHashMap<>();
+  private final Cache<RuleKey, Throwable> failedRules = CacheBuilder.newBuilder()
+      .expireAfterWrite(FAILURE_TTL_SECONDS, TimeUnit.SECONDS)
+      .build();
+  private final RuleFetchStats stats = new RuleFetchStats();
+
+  private final File cacheDir;
+  private final File workDir;
+  private final long cacheMaxAge;
+  private RuleCacheFile cacheFile;
+
+  private final int fetchThreads;
+  private final long fetchTimeout;
+  private final boolean failSoft;
+  private Future<?> warmUp;
+  private final Set<RuleKey> refreshedKeys = ConcurrentHashMap.newKeySet();
+  private Future<?> refresh;
+
+  /**
+   * The rule cache file is kept in the working directory of the root module, whatever the module being analyzed.
+   */
+  public RuleProvider(Configuration settings, ProjectReactor reactor) {
+    this(newWsClient(settings), settings, reactor.getRoot().getWorkDir());
+  }
 
-  public RuleProvider(Configuration settings) {
+  @VisibleForTesting
+  RuleProvider(WsClient wsClient, Configuration settings, File workDir) {
+    this.wsClient = wsClient;
+    this.workDir = workDir;
+    this.cacheDir = settings.get(IssuesReportPlugin.RULES_CACHE_DIR_KEY).map(File::new).orElse(null);
+    this.cacheMaxAge = TimeUnit.HOURS.toMillis(
+        settings.getInt(IssuesReportPlugin.RULES_CACHE_MAX_AGE_KEY).orElse(IssuesReportPlugin.RULES_CACHE_MAX_AGE_DEFAULT));
+    this.fetchThreads = settings.getInt(IssuesReportPlugin.RULES_FETCH_THREADS_KEY).orElse(IssuesReportPlugin.RULES_FETCH_THREADS_DEFAULT);
+    this.fetchTimeout = settings.getInt(IssuesReportPlugin.RULES_FETCH_TIMEOUT_KEY).orElse(IssuesReportPlugin.RULES_FETCH_TIMEOUT_DEFAULT);
+    this.failSoft = settings.getBoolean(IssuesReportPlugin.RULES_FAIL_SOFT_KEY).orElse(Boolean.TRUE);
+    settings.get(IssuesReportPlugin.RULES_CATALOG_KEY).map(File::new).ifPresent(this::loadCatalog);
+  }
+
+  private static WsClient newWsClient(Configuration settings) {
     HttpConnector httpConnector = HttpConnector.newBuilder()
         .url(settings.get(CoreProperties.SERVER_BASE_URL).orElse(CoreProperties.SERVER_BASE_URL_DEFAULT_VALUE))
         .credentials(settings.get(CoreProperties.LOGIN).orElse(null),
                      settings.get(CoreProperties.PASSWORD).orElse(null))
         .build();
 
-    wsClient = WsClientFactories.getDefault().newClient(httpConnector);
+    return WsClientFactories.getDefault().newClient(httpConnector);
   }
 
-  public Rule getRule(RuleKey ruleKey) {
+  /**
+   * Rules of the catalog are never fetched from the server.
+   */
+  private void loadCatalog(File catalog) {
     try {
-      return ruleCache.get(ruleKey, () -> {
-        Rules.ShowResponse showResponse = showRule(ruleKey);
-        return toRule(showResponse);
-      });
-    } catch (Exception e) {
-      throw new IllegalStateException("Failed to get rule " + ruleKey, e);
+      int count = RuleCatalog.read(catalog, ruleCache::put);
+      LOG.debug("{} rules loaded from catalog {}", count, catalog);
+    } catch (IOException | RuntimeException e) {
+      LOG.warn("Unable to read rule catalog {}", catalog, e);
     }
   }
 
-  private Rules.ShowResponse showRule(RuleKey ruleKey) {
-    GetRequest
-        getRequest =
-        new GetRequest("api/rules/show").setParam("key", ruleKey.toString()).setMediaType(MediaTypes.PROTOBUF);
+  /**
+   * Fill the cache with the rules persisted by a previous analysis against the same server. The cache file is read
+   * from the directory set by {@link IssuesReportPlugin#RULES_CACHE_DIR_KEY}, or from the working directory of the
+   * project. Only the first call has an effect.
+   */
+  public synchronized void loadDiskCache() {
+    if (cacheFile != null) {
+      return;
+    }
+    cacheFile = new RuleCacheFile(cacheDir != null ? cacheDir : workDir, wsClient.wsConnector().baseUrl());
+    Map<RuleKey, RuleCacheFile.Entry> entries = cacheFile.read();
+    entries.forEach((ruleKey, entry) -> {
+      if (ruleCache.asMap().putIfAbsent(ruleKey, entry.getName()) == null) {
+        fetchDates.put(ruleKey, entry.getFetchedAt());
+      }
+    });
+    LOG.debug("{} rules loaded from {}", entries.size(), cacheFile.getFile());
+  }
 
-    WsResponse wsResponse = wsClient.wsConnector().call(getRequest);
+  /**
+   * Persist the rules resolved so far, so that next analyses do not have to fetch them again.
+   */
+  public synchronized void saveDiskCache() {
+    if (cacheFile == null) {
+      return;
+    }
+    Map<RuleKey, RuleCacheFile.Entry> entries = new HashMap<>();
+    ruleCache.asMap().forEach((ruleKey, name) -> {
+      Long fetchedAt = fetchDates.get(ruleKey);
+      if (fetchedAt != null) {
+        entries.put(ruleKey, new RuleCacheFile.Entry(name, fetchedAt));
+      }
+    });
+    cacheFile.write(entries);
+  }
 
-    if (wsResponse.code() != 200) {
-      throw new HttpException(wsClient.wsConnector().baseUrl() + toString(getRequest), wsResponse.code(),
-                              wsResponse.content());
+  /**
+   * Resolve the given rules with as few server calls as possible, using api/rules/search filtered on rule keys.
+   * Resolved rules are put in the cache, so that subsequent calls to {@link #getRule(RuleKey)} do not hit the server.
+   * Rules that could not be resolved this way are fetched one by one, concurrently when
+   * {@link IssuesReportPlugin#RULES_FETCH_THREADS_KEY} is greater than 1. This method returns once all of them are
+   * in the cache or failed. Rules loaded from the disk cache that are older than the configured maximum age are used
+   * as is, and refreshed in a background thread, so that an unreachable server does not delay the report.
+   */
+  public void loadRules(Collection<RuleKey> ruleKeys) {
+    awaitWarmUp();
+    doLoadRules(ruleKeys);
+  }
+
+  /**
+   * Start loading the given rules in a background thread, typically the active rules during the sensor phase, so that
+   * they are in the cache when the report is built. The disk cache is loaded first, see {@link #loadDiskCache()},
+   * so that only the rules missing from it or outdated are fetched. Only the first call has an effect.
+   * {@link #loadRules(Collection)} waits for the warm-up to complete before fetching anything itself.
+   */
+  public synchronized void startWarmUp(Collection<RuleKey> ruleKeys) {
+    if (warmUp != null) {
+      return;
     }
+    loadDiskCache();
+    List<RuleKey> keys = new ArrayList<>(ruleKeys);
+    ExecutorService executor = Executors.newSingleThreadExecutor(
+        new ThreadFactoryBuilder().setNameFormat("issues-report-rules-warmup").setDaemon(true).build());
+    try {
+      warmUp = executor.submit(() -> {
+        doLoadRules(keys);
+        LOG.debug("{} active rules loaded in background", keys.size());
+      });
+    } finally {
+      executor.shutdown();
+    }
+  }
 
+  private void awaitWarmUp() {
+    Future<?> pending;
+    synchronized (this) {
+      pending = warmUp;
+    }
+    if (pending == null) {
+      return;
+    }
     try {
-      return Rules.ShowResponse.parseFrom(wsResponse.contentStream());
-    } catch (IOException e) {
-      throw new IllegalStateException(e.getMessage(), e);
+      pending.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      LOG.warn("Unable to load active rules in background", e.getCause());
     }
   }
 
-  private String toString(GetRequest getRequest) {
-    String
-        params =
-        getRequest.getParams().entrySet().stream().sorted(Comparator.comparing(Map.Entry::getKey))
-            .map(e -> e.getKey() + "=" + e.getValue()).collect(Collectors.joining("&"));
-    return getRequest.getPath() + "?" + params;
+  private void doLoadRules(Collection<RuleKey> ruleKeys) {
+    List<RuleKey> missingKeys = ruleKeys.stream()
+        .filter(ruleKey -> !ruleCache.asMap().containsKey(ruleKey))
+        .filter(ruleKey -> failedRules.getIfPresent(ruleKey) == null)
+        .distinct()
+        .collect(Collectors.toList());
+    for (List<RuleKey> page : Iterables.partition(missingKeys, SEARCH_PAGE_SIZE)) {
+      try {
+        searchRules(page).getRulesList().forEach(rule -> cacheRule(page, rule));
+      } catch (RuntimeException e) {
+        stats.recordFailure();
+        LOG.warn("Unable to load rules in bulk, they will be fetched one by one", e);
+        break;
+      }
+    }
+    fetchRules(missingKeys.stream()
+                   .filter(ruleKey -> !ruleCache.asMap().containsKey(ruleKey))
+                   .collect(Collectors.toList()));
+    startRefresh(ruleKeys.stream()
+                   .filter(ruleKey -> ruleCache.asMap().containsKey(ruleKey) && isOutdated(ruleKey))
+                   .filter(refreshedKeys::add)
+                   .collect(Collectors.toList()));
   }
 
-  private Rule toRule(Rules.ShowResponse showResponse) {
-    Rules.Rule rule = showResponse.getRule();
-    if (rule == null) {
-      return new RuleBuilder().build();
+  /**
+   * Search again the given outdated rules in a background thread. Their current names are used meanwhile, and the ones
+   * refreshed before {@link #saveDiskCache()} is called are persisted.
+   */
+  private synchronized void startRefresh(List<RuleKey> outdatedKeys) {
+    if (outdatedKeys.isEmpty()) {
+      return;
+    }
+    ExecutorService executor = Executors.newSingleThreadExecutor(
+        new ThreadFactoryBuilder().setNameFormat("issues-report-rules-refresh").setDaemon(true).build());
+    try {
+      refresh = executor.submit(() -> {
+        for (List<RuleKey> page : Iterables.partition(outdatedKeys, SEARCH_PAGE_SIZE)) {
+          try {
+            List<Rules.Rule> rules = searchRules(page).getRulesList();
+            rules.forEach(rule -> cacheRule(page, rule));
+            forgetRemovedRules(page, rules);
+          } catch (RuntimeException e) {
+            stats.recordFailure();
+            LOG.debug("Unable to refresh outdated rules", e);
+            return;
+          }
+        }
+      });
+    } finally {
+      executor.shutdown();
     }
+  }
 
-    final RuleKey ruleKey = RuleKey.parse(rule.getKey());
-    final Rule response = new RuleBuilder()
-        .key(ruleKey.rule())
-        .repository(ruleKey.repository())
-        .name(rule.getName())
-        .description(rule.getHtmlDesc())
-        .build();
+  @VisibleForTesting
+  void awaitRefresh() throws InterruptedException, ExecutionException {
+    Future<?> pending;
+    synchronized (this) {
+      pending = refresh;
+    }
+    if (pending != null) {
+      pending.get();
+    }
+  }
 
-    rule.getParams().getParamsList().forEach(
-        param -> {
-          final RuleParam ruleParam = response.createParameter();
-          ruleParam.setKey(param.getKey());
-          ruleParam.setDescription(param.getHtmlDesc());
-        });
+  /**
+   * Rules that could not be fetched are not requested again before {@link #FAILURE_TTL_SECONDS}. Meanwhile, a
+   * placeholder named after the rule key is returned, unless {@link IssuesReportPlugin#RULES_FAIL_SOFT_KEY} is
+   * disabled, in which case an {@link IllegalStateException} is thrown.
+   */
+  public RuleDescriptor getRule(RuleKey ruleKey) {
+    Throwable failure = failedRules.getIfPresent(ruleKey);
+    if (failure == null) {
+      try {
+        return descriptor(ruleKey, ruleCache.get(ruleKey, () -> fetchRule(ruleKey)), false);
+      } catch (Exception e) {
+        failure = e.getCause() != null ? e.getCause() : e;
+      }
+    }
+    if (failSoft) {
+      return descriptor(ruleKey, ruleKey.toString(), true);
+    }
+    throw new IllegalStateException("Failed to get rule " + ruleKey, failure);
+  }
 
-    return response;
+  /**
+   * Ids are given the first time a rule is requested, so that the counters indexed by rule id are sized by the rules
+   * of the report, not by the rules of the catalog or of the disk cache. A new descriptor, with the same id, is created
+   * when the name of the rule changed.
+   */
+  private RuleDescriptor descriptor(RuleKey ruleKey, String name, boolean placeholder) {
+    RuleDescriptor rule = descriptors.get(ruleKey);
+    if (rule == null || rule.isPlaceholder() != placeholder || !name.equals(rule.getName())) {
+      rule = new RuleDescriptor(ruleIds.computeIfAbsent(ruleKey, k -> nextRuleId.getAndIncrement()), ruleKey, name, placeholder);
+      descriptors.put(ruleKey, rule);
+    }
+    return rule;
   }
 
-  static class RuleBuilder {
+  /**
+   * Counters about rule resolution since this provider was created. Cache hits and misses only count calls to
+   * {@link #getRule(RuleKey)}.
+   */
+  public RuleFetchStats getStats() {
+    stats.updateCacheStats(ruleCache.stats());
+    return stats;
+  }
 
-    private Rule rule;
+  private void fetchRules(List<RuleKey> ruleKeys) {
+    if (fetchThreads <= 1 || ruleKeys.isEmpty()) {
+      // Rules will be fetched lazily by getRule
+      return;
+    }
+    ExecutorService executor = Executors.newFixedThreadPool(Math.min(fetchThreads, ruleKeys.size()),
+        new ThreadFactoryBuilder().setNameFormat("issues-report-rules-%d").setDaemon(true).build());
+    try {
+      Map<RuleKey, Future<String>> futures = new LinkedHashMap<>();
+      for (RuleKey ruleKey : ruleKeys) {
+        futures.put(ruleKey, executor.submit(() -> fetchRule(ruleKey)));
+      }
+      // The timeout bounds the whole batch, not each fetch, so that a hung server does not block for N times the timeout
+      long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(fetchTimeout);
+      futures.forEach((ruleKey, future) -> waitForRule(ruleKey, future, deadline));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
 
-    RuleBuilder() {
-      this.rule = Rule.create();
+  private void waitForRule(RuleKey ruleKey, Future<String> future, long deadline) {
+    try {
+      ruleCache.put(ruleKey, future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      future.cancel(true);
+    } catch (ExecutionException e) {
+      // Failure already recorded by fetchRule
+      future.cancel(true);
+    } catch (TimeoutException e) {
+      future.cancel(true);
+      recordFailure(ruleKey, e);
     }
+  }
 
-    RuleBuilder key(String key) {
-      this.rule.setKey(key);
-      return this;
+  private String fetchRule(RuleKey ruleKey) {
+    try {
+      String name = showRule(ruleKey).getRule().getName();
+      fetchDates.put(ruleKey, System.currentTimeMillis());
+      return name;
+    } catch (RuntimeException e) {
+      recordFailure(ruleKey, e);
+      throw e;
     }
+  }
+
+  private void recordFailure(RuleKey ruleKey, Throwable failure) {
+    failedRules.put(ruleKey, failure);
+    stats.recordFailure();
+    LOG.warn("Unable to fetch rule {}: {}", ruleKey, failure.toString());
+  }
 
-    RuleBuilder name(String name) {
-      this.rule.setName(name);
-      return this;
+  private void cacheRule(Collection<RuleKey> requestedKeys, Rules.Rule rule) {
+    RuleKey ruleKey = RuleKey.parse(rule.getKey());
+    if (requestedKeys.contains(ruleKey)) {
+      ruleCache.put(ruleKey, rule.getName());
+      fetchDates.put(ruleKey, System.currentTimeMillis());
     }
+  }
+
+  /**
+   * Outdated rules the server did not return any more are still used by this analysis, but are not persisted again,
+   * so that they are not searched on every analysis.
+   */
+  private void forgetRemovedRules(List<RuleKey> requestedKeys, List<Rules.Rule> rules) {
+    Set<String> foundKeys = rules.stream().map(Rules.Rule::getKey).collect(Collectors.toSet());
+    requestedKeys.stream()
+        .filter(ruleKey -> !foundKeys.contains(ruleKey.toString()) && isOutdated(ruleKey))
+        .forEach(fetchDates::remove);
+  }
+
+  private boolean isOutdated(RuleKey ruleKey) {
+    Long fetchedAt = fetchDates.get(ruleKey);
+    return fetchedAt != null && System.currentTimeMillis() - fetchedAt > cacheMaxAge;
+  }
 
-    Rule build() {
-      return rule;
+  private Rules.SearchResponse searchRules(List<RuleKey> ruleKeys) {
+    GetRequest
+        getRequest =
+        new GetRequest("api/rules/search")
+            .setParam("rule_keys", ruleKeys.stream().map(RuleKey::toString).collect(Collectors.joining(",")))
+            .setParam("f", "name,repo")
+            .setParam("ps", ruleKeys.size())
+            .setMediaType(MediaTypes.PROTOBUF);
+
+    try {
+      return Rules.SearchResponse.parseFrom(call(getRequest));
+    } catch (IOException e) {
+      throw new IllegalStateException(e.getMessage(), e);
     }
+  }
+
+  private Rules.ShowResponse showRule(RuleKey ruleKey) {
+    GetRequest
+        getRequest =
+        new GetRequest("api/rules/show").setParam("key", ruleKey.toString()).setMediaType(MediaTypes.PROTOBUF);
 
-    RuleBuilder description(String htmlDesc) {
-      this.rule.setDescription(htmlDesc);
-      return this;
+    long start = System.nanoTime();
+    try {
+      return Rules.ShowResponse.parseFrom(call(getRequest));
+    } catch (IOException e) {
+      throw new IllegalStateException(e.getMessage(), e);
+    } finally {
+      stats.recordShowLatency(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
     }
+  }
+
+  private byte[] call(GetRequest getRequest) throws IOException {
+    WsResponse wsResponse = wsClient.wsConnector().call(getRequest);
 
-    public RuleBuilder repository(String repo) {
-      this.rule.setRepositoryKey(repo);
-      return this;
+    if (wsResponse.code() != 200) {
+      stats.recordHttpCall(0);
+      throw new HttpException(wsClient.wsConnector().baseUrl() + toString(getRequest), wsResponse.code(),
+                              wsResponse.content());
     }
+    byte[] content = ByteStreams.toByteArray(wsResponse.contentStream());
+    stats.recordHttpCall(content.length);
+    return content;
+  }
+
+  private String toString(GetRequest getRequest) {
+    String
+        params =
+        getRequest.getParams().entrySet().stream().sorted(Comparator.comparing(Map.Entry::getKey))
+            .map(e -> e.getKey() + "=" + e.getValue()).collect(Collectors.joining("&"));
+    return getRequest.getPath() + "?" + params;
   }
 
+
 }
@@ -0,0 +1,182 @@
+/*
+ * Sonar :: Issues Report :: Plugin
+ * Copyright (C) 2013 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.issuesreport.provider;
+
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Lines of a source file, decoded on demand. Only the offsets of the lines are computed up front, so that displaying a
+ * few lines of a large file does not decode the whole of it. Files are read in memory, except the ones of
+ * at least {@link #MAP_THRESHOLD} bytes, which are memory-mapped. A mapping keeps the file locked on some platforms until
+ * it is garbage collected, and costs more than a plain read for small files.
+ * <p>
+ * Lines are split like {@link java.io.BufferedReader#readLine()} does. Indexing lines requires an encoding where line
+ * terminators are single bytes that cannot be part of another character, which is the case of ASCII-compatible
+ * encodings, UTF-8 included. Files in other encodings are read and decoded at once.
+ */
+public final class SourceLines {
+
+  private static final SourceLines EMPTY = new SourceLines(null, null, new int[0], new int[0], null);
+  private static final byte LF = '\n';
+  private static final byte CR = '\r';
+
+  static final int MAP_THRESHOLD = 1024 * 1024;
+
+  private final ByteBuffer content;
+  private final Charset charset;
+  // Line i starts at starts[i - 1], and ends before ends[i - 1], terminator excluded
+  private final int[] starts;
+  private final int[] ends;
+  // Only set when the lines of the file could not be indexed
+  private final List<String> lines;
+  // Lines already requested, allocated on first request
+  private String[] decodedLines;
+
+  private SourceLines(ByteBuffer content, Charset charset, int[] starts, int[] ends, List<String> lines) {
+    this.content = content;
+    this.charset = charset;
+    this.starts = starts;
+    this.ends = ends;
+    this.lines = lines;
+  }
+
+  static SourceLines empty() {
+    return EMPTY;
+  }
+
+  static SourceLines of(List<String> lines) {
+    return new SourceLines(null, null, null, null, lines);
+  }
+
+  static boolean canIndex(Charset charset) {
+    return Arrays.equals("\n".getBytes(charset), new byte[] {LF}) && Arrays.equals("\r".getBytes(charset), new byte[] {CR});
+  }
+
+  /**
+   * Read or map the file and index its lines. The charset must be one for which {@link #canIndex(Charset)} is true.
+   */
+  static SourceLines read(File file, Charset charset) throws IOException {
+    ByteBuffer content;
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      long fileSize = channel.size();
+      if (fileSize >= MAP_THRESHOLD) {
+        content = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+      } else {
+        content = ByteBuffer.allocate((int) fileSize);
+        while (content.hasRemaining() && channel.read(content) >= 0) {
+          // Read until the end of the file
+        }
+        content.flip();
+      }
+    }
+    int size = content.limit();
+    int[] starts = new int[64];
+    int[] ends = new int[64];
+    int count = 0;
+    int start = 0;
+    int position = 0;
+    while (position < size) {
+      byte b = content.get(position);
+      if (b == LF || b == CR) {
+        if (count == starts.length) {
+          starts = Arrays.copyOf(starts, count * 2);
+          ends = Arrays.copyOf(ends, count * 2);
+        }
+        starts[count] = start;
+        ends[count] = position;
+        count++;
+        position++;
+        if (b == CR && position < size && content.get(position) == LF) {
+          position++;
+        }
+        start = position;
+      } else {
+        position++;
+      }
+    }
+    if (start < size) {
+      // Last line, without terminator
+      starts = Arrays.copyOf(starts, count + 1);
+      ends = Arrays.copyOf(ends, count + 1);
+      starts[count] = start;
+      ends[count] = size;
+      count++;
+    }
+    return new SourceLines(content, charset, Arrays.copyOf(starts, count), Arrays.copyOf(ends, count), null);
+  }
+
+  boolean isMapped() {
+    return content instanceof MappedByteBuffer;
+  }
+
+  public int getLineCount() {
+    return lines != null ? lines.size() : starts.length;
+  }
+
+  /**
+   * Content of a line, from 1 to {@link #getLineCount()}.
+   */
+  public String getLine(int line) {
+    if (lines != null) {
+      return lines.get(line - 1);
+    }
+    if (decodedLines == null) {
+      decodedLines = new String[getLineCount()];
+    }
+    String decoded = decodedLines[line - 1];
+    if (decoded == null) {
+      decoded = decode(line);
+      decodedLines[line - 1] = decoded;
+    }
+    return decoded;
+  }
+
+  /**
+   * Upper bound of the memory used once all lines have been read.
+   */
+  int estimatedSize() {
+    long size = 16L * getLineCount();
+    if (lines != null) {
+      for (String line : lines) {
+        size += 2L * line.length();
+      }
+    } else if (content != null) {
+      size += 2L * content.limit();
+    }
+    return (int) Math.min(size, Integer.MAX_VALUE);
+  }
+
+  private String decode(int line) {
+    ByteBuffer slice = content.duplicate();
+    slice.limit(ends[line - 1]);
+    slice.position(starts[line - 1]);
+    return charset.decode(slice).toString();
+  }
+
+}
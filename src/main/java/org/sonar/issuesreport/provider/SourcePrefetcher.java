@@ -0,0 +1,152 @@
+/*
+ * Sonar :: Issues Report :: Plugin
+ * Copyright (C) 2013 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.issuesreport.provider;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.sonar.issuesreport.fs.ResourceNode;
+
+import java.io.Closeable;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+import javax.annotation.CheckForNull;
+
+/**
+ * Reads sources in the background, in the order resources are printed, so that disk reads overlap with rendering.
+ * At most {@code ahead} sources are read beyond the last one {@link #take(ResourceNode) taken}. Sources of resources
+ * that were skipped by the printer are dropped.
+ */
+final class SourcePrefetcher implements Closeable {
+
+  private final List<ResourceNode> resources;
+  private final Map<ResourceNode, Integer> positions = new HashMap<>();
+  private final Map<ResourceNode, Future<SourceLines>> pending = new ConcurrentHashMap<>();
+  private final Function<ResourceNode, SourceLines> reader;
+  private final BiConsumer<ResourceNode, SourceLines> preload;
+  private final int ahead;
+  private final ExecutorService ioPool;
+  private final Thread producer;
+
+  // Guarded by this
+  private int taken = -1;
+  private boolean closed;
+
+  SourcePrefetcher(List<ResourceNode> resources, int threads, int ahead, Function<ResourceNode, SourceLines> reader,
+    BiConsumer<ResourceNode, SourceLines> preload) {
+    this.resources = resources;
+    for (int i = 0; i < resources.size(); i++) {
+      positions.putIfAbsent(resources.get(i), i);
+    }
+    this.reader = reader;
+    this.preload = preload;
+    this.ahead = ahead;
+    this.ioPool = Executors.newFixedThreadPool(threads,
+      new ThreadFactoryBuilder().setNameFormat("issues-report-sources-%d").setDaemon(true).build());
+    this.producer = new ThreadFactoryBuilder().setNameFormat("issues-report-sources-prefetch").setDaemon(true).build()
+      .newThread(this::produce);
+    producer.start();
+  }
+
+  private void produce() {
+    for (int i = 0; i < resources.size(); i++) {
+      synchronized (this) {
+        while (!closed && i > taken + ahead) {
+          try {
+            wait();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+          }
+        }
+        if (closed) {
+          return;
+        }
+        if (i <= taken) {
+          // Already requested, and read by the printer itself
+          continue;
+        }
+        ResourceNode resource = resources.get(i);
+        pending.put(resource, ioPool.submit(() -> {
+          SourceLines source = reader.apply(resource);
+          preload.accept(resource, source);
+          return source;
+        }));
+      }
+    }
+  }
+
+  /**
+   * Source of the resource if it was prefetched, waiting for it to be read if needed, or null if it was not.
+   */
+  @CheckForNull
+  SourceLines take(ResourceNode resource) {
+    Integer position = positions.get(resource);
+    if (position == null) {
+      return null;
+    }
+    synchronized (this) {
+      if (position > taken) {
+        taken = position;
+        notifyAll();
+      }
+    }
+    pending.entrySet().removeIf(entry -> {
+      boolean skipped = positions.get(entry.getKey()) < position;
+      if (skipped) {
+        entry.getValue().cancel(false);
+      }
+      return skipped;
+    });
+    Future<SourceLines> future = pending.remove(resource);
+    if (future == null) {
+      return null;
+    }
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return null;
+    } catch (ExecutionException | CancellationException e) {
+      return null;
+    }
+  }
+
+  @Override
+  public void close() {
+    synchronized (this) {
+      closed = true;
+      notifyAll();
+    }
+    ioPool.shutdownNow();
+    pending.values().forEach(future -> future.cancel(true));
+    pending.clear();
+  }
+
+}
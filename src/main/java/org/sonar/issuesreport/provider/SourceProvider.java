@@ -19,40 +19,114 @@
  */
 package org.sonar.issuesreport.provider;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
 import org.apache.commons.io.FileUtils;
-import org.apache.commons.lang.StringEscapeUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.sonar.api.batch.ScannerSide;
+import org.sonar.api.config.Configuration;
+import org.sonar.issuesreport.IssuesReportPlugin;
 import org.sonar.issuesreport.fs.ResourceNode;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Collections;
+import java.nio.charset.Charset;
 import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
 
 @ScannerSide
 public class SourceProvider {
 
   private static final Logger LOG = LoggerFactory.getLogger(SourceProvider.class);
+  private static final long BYTES_PER_MB = 1024L * 1024L;
+  // Number of sources read in advance
+  private static final int PREFETCH_AHEAD = 8;
+
+  // Sources read for the report being printed, so that the full and light reports share them
+  private final Cache<ResourceNode, SourceLines> cache;
+  private volatile SourcePrefetcher prefetcher;
+
+  public SourceProvider() {
+    this(IssuesReportPlugin.HTML_SOURCE_CACHE_SIZE_DEFAULT);
+  }
+
+  public SourceProvider(Configuration settings) {
+    this(settings.getInt(IssuesReportPlugin.HTML_SOURCE_CACHE_SIZE_KEY).orElse(IssuesReportPlugin.HTML_SOURCE_CACHE_SIZE_DEFAULT));
+  }
+
+  private SourceProvider(int cacheSizeInMb) {
+    this.cache = CacheBuilder.newBuilder()
+      .maximumWeight(Math.max(cacheSizeInMb, 0) * BYTES_PER_MB)
+      .weigher((ResourceNode resource, SourceLines source) -> source.estimatedSize())
+      .build();
+  }
+
+  /**
+   * Source of the resource, lines being read and escaped only when requested. Sources are kept until
+   * {@link #clearCache()}, within the limit set by {@link IssuesReportPlugin#HTML_SOURCE_CACHE_SIZE_KEY}, least recently
+   * used ones being evicted first.
+   */
+  public SourceLines getSource(ResourceNode resource) {
+    SourceLines source = cache.getIfPresent(resource);
+    if (source == null) {
+      SourcePrefetcher currentPrefetcher = prefetcher;
+      if (currentPrefetcher != null) {
+        source = currentPrefetcher.take(resource);
+      }
+      if (source == null) {
+        source = readSource(resource);
+      }
+      cache.put(resource, source);
+    }
+    return source;
+  }
+
+  /**
+   * Start reading the sources of the resources in the background, in the given order, which should be the one they
+   * are printed in. {@code preload} is called on the reading thread with each source, so that lines to display can be
+   * decoded ahead too. Sources are then handed over by {@link #getSource(ResourceNode)}. Sources already in the cache
+   * are not read again. Any previous prefetch is stopped.
+   */
+  public void startPrefetch(List<ResourceNode> resources, int threads, BiConsumer<ResourceNode, SourceLines> preload) {
+    stopPrefetch();
+    List<ResourceNode> toRead = resources.stream()
+      .filter(resource -> cache.getIfPresent(resource) == null)
+      .collect(Collectors.toList());
+    if (!toRead.isEmpty()) {
+      prefetcher = new SourcePrefetcher(toRead, threads, PREFETCH_AHEAD, SourceProvider::readSource, preload);
+    }
+  }
+
+  public void stopPrefetch() {
+    SourcePrefetcher currentPrefetcher = prefetcher;
+    if (currentPrefetcher != null) {
+      currentPrefetcher.close();
+      prefetcher = null;
+    }
+  }
+
+  public void clearCache() {
+    cache.invalidateAll();
+  }
 
-  public List<String> getEscapedSource(ResourceNode resource) {
+  private static SourceLines readSource(ResourceNode resource) {
     File path = resource.getPath();
     if (path == null || path.isDirectory()) {
       // Folder
-      return Collections.emptyList();
+      return SourceLines.empty();
     }
+    Charset charset = resource.getEncoding();
     try {
-      List<String> lines = FileUtils.readLines(path, resource.getEncoding().toString());
-      List<String> escapedLines = new ArrayList<>(lines.size());
-      for (String line : lines) {
-        escapedLines.add(StringEscapeUtils.escapeHtml(line));
+      if (SourceLines.canIndex(charset)) {
+        return SourceLines.read(path, charset);
       }
-      return escapedLines;
+      return SourceLines.of(FileUtils.readLines(path, charset.toString()));
     } catch (IOException e) {
       LOG.warn("Unable to read source code of resource {}", resource, e);
-      return Collections.emptyList();
+      return SourceLines.empty();
     }
   }
 
@@ -0,0 +1,135 @@
+/*
+ * Sonar :: Issues Report :: Plugin
+ * Copyright (C) 2013 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.issuesreport.report;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Temporary file holding the keys and messages of the issues of a report, when there are too many of them to be kept
+ * in memory. Each {@link IssueStore} appends its issues by chunks, and reads them back when the report is printed.
+ * Chunks are read into heap buffers rather than mapped, so that nothing keeps the file locked once it is closed. Only
+ * the strings of the last store read are kept in memory, since printers go through resources one after the other.
+ */
+final class IssueSpillFile implements Closeable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(IssueSpillFile.class);
+
+  static final String FILENAME = "issues-report-spill.bin";
+
+  private final Path path;
+  private final FileChannel channel;
+  private long size;
+
+  private IssueStore loadedStore;
+  private String[] loadedStrings;
+
+  private IssueSpillFile(Path path, FileChannel channel) {
+    this.path = path;
+    this.channel = channel;
+  }
+
+  static IssueSpillFile create(File dir) {
+    Path path = dir.toPath().resolve(FILENAME);
+    try {
+      Files.createDirectories(dir.toPath());
+      return new IssueSpillFile(path, FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+        StandardOpenOption.READ, StandardOpenOption.WRITE));
+    } catch (IOException e) {
+      throw new IllegalStateException("Fail to create " + path, e);
+    }
+  }
+
+  /**
+   * Append a chunk, and return its offset in the file.
+   */
+  synchronized long append(ByteBuffer chunk) {
+    long offset = size;
+    try {
+      while (chunk.hasRemaining()) {
+        size += channel.write(chunk, size);
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException("Fail to write to " + path, e);
+    }
+    return offset;
+  }
+
+  ByteBuffer read(long offset, int length) {
+    ByteBuffer buffer = ByteBuffer.allocate(length);
+    try {
+      while (buffer.hasRemaining()) {
+        if (channel.read(buffer, offset + buffer.position()) < 0) {
+          throw new IllegalStateException("Unexpected end of " + path);
+        }
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException("Fail to read " + path, e);
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  /**
+   * Keys and messages of the issues of the store, alternately.
+   */
+  synchronized String[] strings(IssueStore store) {
+    if (store != loadedStore) {
+      loadedStrings = null;
+      loadedStrings = store.readStrings(this);
+      loadedStore = store;
+    }
+    return loadedStrings;
+  }
+
+  long size() {
+    return size;
+  }
+
+  /**
+   * Best effort: called once the reports are printed, so a file that cannot be deleted must not fail the analysis.
+   */
+  @Override
+  public synchronized void close() {
+    loadedStore = null;
+    loadedStrings = null;
+    try {
+      channel.close();
+    } catch (IOException e) {
+      LOG.warn("Fail to close {}", path, e);
+    }
+    try {
+      Files.deleteIfExists(path);
+    } catch (IOException | RuntimeException e) {
+      LOG.warn("Fail to delete {}, it will be deleted on exit", path, e);
+      path.toFile().deleteOnExit();
+    }
+  }
+
+}
@@ -0,0 +1,304 @@
+/*
+ * Sonar :: Issues Report :: Plugin
+ * Copyright (C) 2013 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.issuesreport.report;
+
+import org.sonar.api.batch.postjob.issue.PostJobIssue;
+import org.sonar.api.batch.rule.Severity;
+import org.sonar.issuesreport.provider.RuleDescriptor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+
+/**
+ * Snapshot of the issues of a resource, one column per attribute, so that the report does not retain the scanner
+ * issues. Rules and messages are stored once in per-store tables and referenced by index. Issues are read through
+ * {@link ReportIssue} flyweights.
+ * <p>
+ * With a {@link IssueSpillFile}, keys and messages are not kept in memory but written to the file by chunks of
+ * {@link #CHUNK_SIZE} issues, and read back when needed.
+ */
+final class IssueStore {
+
+  private static final Severity[] SEVERITIES = Severity.values();
+  private static final int INITIAL_CAPACITY = 4;
+  private static final int NO_MESSAGE = -1;
+
+  /**
+   * Number of issues whose key and message are written to the spill file at once. Bounds the memory used by the
+   * pending chunk while keeping the number of writes low.
+   */
+  static final int CHUNK_SIZE = 1024;
+
+  private int size;
+  private String[] keys = new String[INITIAL_CAPACITY];
+  private int[] rules = new int[INITIAL_CAPACITY];
+  private int[] lines = new int[INITIAL_CAPACITY];
+  private byte[] severities = new byte[INITIAL_CAPACITY];
+  private int[] messages = new int[INITIAL_CAPACITY];
+  private final BitSet newIssues = new BitSet();
+
+  private final List<RuleDescriptor> ruleTable = new ArrayList<>();
+  private final List<String> messageTable = new ArrayList<>();
+  // Only used while adding issues, dropped by compact()
+  private Map<RuleDescriptor, Integer> ruleIndexes;
+  private Map<String, Integer> messageIndexes;
+
+  // Only used with a spill file: encoded keys and messages not written yet, and location of the chunks written
+  @Nullable
+  private final IssueSpillFile spillFile;
+  private ByteArrayOutputStream pending;
+  private DataOutputStream pendingOutput;
+  private int pendingCount;
+  private long[] chunkOffsets = new long[0];
+  private int[] chunkLengths = new int[0];
+
+  IssueStore() {
+    this(null);
+  }
+
+  IssueStore(@Nullable IssueSpillFile spillFile) {
+    this.spillFile = spillFile;
+    if (spillFile != null) {
+      keys = null;
+      messages = null;
+    }
+  }
+
+  void add(PostJobIssue issue, RuleDescriptor rule) {
+    if (ruleIndexes == null) {
+      ruleIndexes = indexesOf(ruleTable);
+      messageIndexes = indexesOf(messageTable);
+    }
+    if (size == lines.length) {
+      resize(Math.max(size * 2, INITIAL_CAPACITY));
+    }
+    rules[size] = index(rule, ruleTable, ruleIndexes);
+    Integer line = issue.line();
+    lines[size] = line != null ? line : 0;
+    severities[size] = (byte) issue.severity().ordinal();
+    String message = issue.message();
+    if (spillFile != null) {
+      spill(issue.key(), message);
+    } else {
+      keys[size] = issue.key();
+      messages[size] = message != null ? index(message, messageTable, messageIndexes) : NO_MESSAGE;
+    }
+    newIssues.set(size, issue.isNew());
+    size++;
+  }
+
+  /**
+   * Release the memory only needed to add issues. Issues can still be added afterwards.
+   */
+  void compact() {
+    resize(size);
+    ruleIndexes = null;
+    messageIndexes = null;
+    if (spillFile != null) {
+      flushPending();
+    }
+  }
+
+  private void resize(int capacity) {
+    rules = Arrays.copyOf(rules, capacity);
+    lines = Arrays.copyOf(lines, capacity);
+    severities = Arrays.copyOf(severities, capacity);
+    if (spillFile == null) {
+      keys = Arrays.copyOf(keys, capacity);
+      messages = Arrays.copyOf(messages, capacity);
+    }
+  }
+
+  private void spill(String key, @Nullable String message) {
+    if (pending == null) {
+      pending = new ByteArrayOutputStream();
+      pendingOutput = new DataOutputStream(pending);
+    }
+    try {
+      writeString(pendingOutput, key);
+      writeString(pendingOutput, message);
+    } catch (IOException e) {
+      // Not thrown by ByteArrayOutputStream
+      throw new IllegalStateException(e);
+    }
+    pendingCount++;
+    if (pendingCount == CHUNK_SIZE) {
+      flushPending();
+    }
+  }
+
+  private static void writeString(DataOutputStream output, @Nullable String value) throws IOException {
+    if (value == null) {
+      output.writeInt(-1);
+    } else {
+      byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+      output.writeInt(bytes.length);
+      output.write(bytes);
+    }
+  }
+
+  private void flushPending() {
+    if (pendingCount == 0) {
+      pending = null;
+      pendingOutput = null;
+      return;
+    }
+    byte[] chunk = pending.toByteArray();
+    long offset = spillFile.append(ByteBuffer.wrap(chunk));
+    int chunkCount = chunkOffsets.length;
+    chunkOffsets = Arrays.copyOf(chunkOffsets, chunkCount + 1);
+    chunkLengths = Arrays.copyOf(chunkLengths, chunkCount + 1);
+    chunkOffsets[chunkCount] = offset;
+    chunkLengths[chunkCount] = chunk.length;
+    pending = null;
+    pendingOutput = null;
+    pendingCount = 0;
+  }
+
+  /**
+   * Read back the keys and messages written to the spill file, alternately.
+   */
+  String[] readStrings(IssueSpillFile file) {
+    flushPending();
+    String[] strings = new String[size * 2];
+    int index = 0;
+    for (int chunk = 0; chunk < chunkOffsets.length; chunk++) {
+      ByteBuffer buffer = file.read(chunkOffsets[chunk], chunkLengths[chunk]);
+      while (buffer.hasRemaining()) {
+        strings[index] = readString(buffer);
+        index++;
+      }
+    }
+    return strings;
+  }
+
+  @CheckForNull
+  private static String readString(ByteBuffer buffer) {
+    int length = buffer.getInt();
+    if (length < 0) {
+      return null;
+    }
+    byte[] bytes = new byte[length];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static <T> Map<T, Integer> indexesOf(List<T> table) {
+    Map<T, Integer> indexes = new HashMap<>();
+    for (int i = 0; i < table.size(); i++) {
+      indexes.put(table.get(i), i);
+    }
+    return indexes;
+  }
+
+  private static <T> int index(T value, List<T> table, Map<T, Integer> indexes) {
+    Integer index = indexes.get(value);
+    if (index == null) {
+      index = table.size();
+      table.add(value);
+      indexes.put(value, index);
+    }
+    return index;
+  }
+
+  int size() {
+    return size;
+  }
+
+  String key(int issue) {
+    if (spillFile != null) {
+      return spillFile.strings(this)[issue * 2];
+    }
+    return keys[issue];
+  }
+
+  RuleDescriptor rule(int issue) {
+    return ruleTable.get(rules[issue]);
+  }
+
+  /**
+   * Line of the issue, or 0 if it is not on a line.
+   */
+  int line(int issue) {
+    return lines[issue];
+  }
+
+  Severity severity(int issue) {
+    return SEVERITIES[severities[issue]];
+  }
+
+  boolean isNew(int issue) {
+    return newIssues.get(issue);
+  }
+
+  @CheckForNull
+  String message(int issue) {
+    if (spillFile != null) {
+      return spillFile.strings(this)[issue * 2 + 1];
+    }
+    int message = messages[issue];
+    return message == NO_MESSAGE ? null : messageTable.get(message);
+  }
+
+  /**
+   * Issues at the given positions, from {@code from} inclusive to {@code to} exclusive.
+   */
+  List<ReportIssue> view(int[] positions, int from, int to) {
+    return new AbstractList<ReportIssue>() {
+      @Override
+      public ReportIssue get(int index) {
+        return new ReportIssue(IssueStore.this, positions[from + index]);
+      }
+
+      @Override
+      public int size() {
+        return to - from;
+      }
+    };
+  }
+
+  List<ReportIssue> all() {
+    return new AbstractList<ReportIssue>() {
+      @Override
+      public ReportIssue get(int index) {
+        return new ReportIssue(IssueStore.this, index);
+      }
+
+      @Override
+      public int size() {
+        return size;
+      }
+    };
+  }
+
+}
@@ -27,6 +27,15 @@ public class IssueVariation {
   private int newIssuesCount;
   private int resolvedIssuesCount;
 
+  public IssueVariation() {
+  }
+
+  IssueVariation(int countInCurrentAnalysis, int newIssuesCount, int resolvedIssuesCount) {
+    this.countInCurrentAnalysis = countInCurrentAnalysis;
+    this.newIssuesCount = newIssuesCount;
+    this.resolvedIssuesCount = resolvedIssuesCount;
+  }
+
   public int getCountInCurrentAnalysis() {
     return countInCurrentAnalysis;
   }
@@ -51,6 +60,12 @@ public class IssueVariation {
     this.resolvedIssuesCount++;
   }
 
+  void add(IssueVariation other) {
+    this.countInCurrentAnalysis += other.countInCurrentAnalysis;
+    this.newIssuesCount += other.newIssuesCount;
+    this.resolvedIssuesCount += other.resolvedIssuesCount;
+  }
+
   @Override
   public String toString() {
     return new ToStringBuilder(this).
@@ -22,23 +22,43 @@ package org.sonar.issuesreport.report;
 import com.google.common.collect.Maps;
 
 import org.sonar.api.batch.postjob.issue.PostJobIssue;
-import org.sonar.api.rules.Rule;
 import org.sonar.issuesreport.fs.ResourceNode;
+import org.sonar.issuesreport.provider.RuleDescriptor;
 
+import java.io.Closeable;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
 
-public class IssuesReport {
+import javax.annotation.Nullable;
+
+/**
+ * Issues of the analysis, grouped by resource. The builder {@link #freeze() freezes} the report once all issues have
+ * been added: it is then read-only, and can be shared by printers without copies.
+ * <p>
+ * Reports of projects with many issues keep the keys and messages of issues in a temporary file, deleted by
+ * {@link #close()}.
+ */
+public class IssuesReport implements Closeable {
 
-  public static final int TOO_MANY_ISSUES_THRESHOLD = 1000;
   private String title;
   private Date date;
   private final ReportSummary summary = new ReportSummary();
-  private final Map<ResourceNode, ResourceReport> resourceReportsByResource = Maps.newLinkedHashMap();
+  private Map<ResourceNode, ResourceReport> resourceReportsByResource = Maps.newLinkedHashMap();
+  // Set when frozen
+  private List<ResourceReport> resourceReports;
+  private List<ResourceNode> resourcesWithReport;
+  @Nullable
+  private final IssueSpillFile spillFile;
 
   public IssuesReport() {
+    this(null);
+  }
+
+  IssuesReport(@Nullable IssueSpillFile spillFile) {
+    this.spillFile = spillFile;
   }
 
   public ReportSummary getSummary() {
@@ -50,6 +70,7 @@ public class IssuesReport {
   }
 
   public void setTitle(String title) {
+    checkNotFrozen();
     this.title = title;
   }
 
@@ -58,6 +79,7 @@ public class IssuesReport {
   }
 
   public void setDate(Date date) {
+    checkNotFrozen();
     this.date = date;
   }
 
@@ -66,28 +88,85 @@ public class IssuesReport {
   }
 
   public List<ResourceReport> getResourceReports() {
+    if (resourceReports != null) {
+      return resourceReports;
+    }
     return new ArrayList<>(resourceReportsByResource.values());
   }
 
   public List<ResourceNode> getResourcesWithReport() {
+    if (resourcesWithReport != null) {
+      return resourcesWithReport;
+    }
     return new ArrayList<>(resourceReportsByResource.keySet());
   }
 
-  public void addIssueOnResource(ResourceNode resource, PostJobIssue issue, Rule rule) {
+  public boolean isFrozen() {
+    return resourceReports != null;
+  }
+
+  /**
+   * Whether issue keys and messages are kept in a temporary file rather than in memory.
+   */
+  public boolean isSpilled() {
+    return spillFile != null;
+  }
+
+  public void addIssueOnResource(ResourceNode resource, PostJobIssue issue, RuleDescriptor rule) {
     addResource(resource);
     getSummary().addIssue(issue, rule);
     resourceReportsByResource.get(resource).addIssue(issue, rule);
   }
 
-  public void addResolvedIssueOnResource(ResourceNode resource, PostJobIssue issue, Rule rule) {
+  public void addResolvedIssueOnResource(ResourceNode resource, PostJobIssue issue, RuleDescriptor rule) {
     addResource(resource);
     getSummary().addResolvedIssue(issue, rule);
     resourceReportsByResource.get(resource).addResolvedIssue(issue, rule);
   }
 
+  /**
+   * Add the report of a resource having no report yet, built separately.
+   */
+  void addResourceReport(ResourceReport resourceReport) {
+    checkNotFrozen();
+    resourceReportsByResource.put(resourceReport.getResourceNode(), resourceReport);
+  }
+
+  /**
+   * Make the report read-only. Memory only needed while issues are added is released, and everything the printers
+   * read is computed once here: sorted rule reports, line indexes and the lists of resources.
+   */
+  void freeze() {
+    if (isFrozen()) {
+      return;
+    }
+    summary.freeze();
+    resourceReportsByResource.values().forEach(ResourceReport::freeze);
+    resourceReportsByResource = Collections.unmodifiableMap(resourceReportsByResource);
+    resourcesWithReport = Collections.unmodifiableList(new ArrayList<>(resourceReportsByResource.keySet()));
+    resourceReports = Collections.unmodifiableList(new ArrayList<>(resourceReportsByResource.values()));
+  }
+
+  /**
+   * Delete the temporary file of issues, if any. Issues cannot be read anymore.
+   */
+  @Override
+  public void close() {
+    if (spillFile != null) {
+      spillFile.close();
+    }
+  }
+
+  private void checkNotFrozen() {
+    if (isFrozen()) {
+      throw new IllegalStateException("The report is frozen");
+    }
+  }
+
   private void addResource(ResourceNode resource) {
+    checkNotFrozen();
     if (!resourceReportsByResource.containsKey(resource)) {
-      resourceReportsByResource.put(resource, new ResourceReport(resource));
+      resourceReportsByResource.put(resource, new ResourceReport(resource, spillFile));
     }
   }
 
@@ -19,62 +19,199 @@
  */
 package org.sonar.issuesreport.report;
 
+import com.google.common.collect.Iterables;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.sonar.api.CoreProperties;
 import org.sonar.api.batch.ScannerSide;
+import org.sonar.api.batch.fs.FileSystem;
 import org.sonar.api.batch.postjob.PostJobContext;
 import org.sonar.api.batch.postjob.issue.PostJobIssue;
 import org.sonar.api.rule.RuleKey;
-import org.sonar.api.rules.Rule;
+import org.sonar.issuesreport.IssuesReportPlugin;
+import org.sonar.issuesreport.provider.RuleDescriptor;
 import org.sonar.issuesreport.provider.RuleProvider;
 import org.sonar.issuesreport.fs.ResourceNode;
 import org.sonar.issuesreport.fs.InputFilesCollector;
 
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
 
 @ScannerSide
 public class IssuesReportBuilder {
 
   private static final Logger LOG = LoggerFactory.getLogger(IssuesReportBuilder.class);
 
+  /**
+   * Issues are split in more shards than threads, so that a few big files do not leave threads idle.
+   */
+  private static final int SHARDS_PER_THREAD = 4;
+
   private final RuleProvider ruleProvider;
   private final InputFilesCollector inputFilesCollector;
+  private final FileSystem fs;
 
-  public IssuesReportBuilder(RuleProvider ruleProvider, InputFilesCollector inputFilesCollector) {
+  public IssuesReportBuilder(RuleProvider ruleProvider, InputFilesCollector inputFilesCollector, FileSystem fs) {
     this.ruleProvider = ruleProvider;
     this.inputFilesCollector = inputFilesCollector;
+    this.fs = fs;
   }
 
   public IssuesReport buildReport(PostJobContext context) {
-    IssuesReport issuesReport = new IssuesReport();
+    IssueSpillFile spillFile = createSpillFile(context);
+    try {
+      return buildReport(context, spillFile);
+    } catch (RuntimeException | Error e) {
+      // The report owning the spill file is not returned, nobody else will close it
+      if (spillFile != null) {
+        spillFile.close();
+      }
+      throw e;
+    }
+  }
+
+  private IssuesReport buildReport(PostJobContext context, @Nullable IssueSpillFile spillFile) {
+    IssuesReport issuesReport = new IssuesReport(spillFile);
     issuesReport.setTitle(context.config().get(CoreProperties.PROJECT_NAME_PROPERTY).orElse(""));
     issuesReport.setDate(new Date());
 
-    processIssues(issuesReport, context.issues(), false);
-    processIssues(issuesReport, context.resolvedIssues(), true);
+    ruleProvider.loadDiskCache();
+    ruleProvider.loadRules(collectRuleKeys(context));
+
+    int threads = context.config().getInt(IssuesReportPlugin.BUILD_THREADS_KEY).orElse(IssuesReportPlugin.BUILD_THREADS_DEFAULT);
+    if (threads > 1) {
+      processIssuesInParallel(issuesReport, context, threads, spillFile);
+    } else {
+      processIssues(issuesReport, context.issues(), false);
+      processIssues(issuesReport, context.resolvedIssues(), true);
+    }
+    issuesReport.freeze();
+
+    ruleProvider.saveDiskCache();
 
     return issuesReport;
   }
 
+  /**
+   * Spill file of the report, if there are more issues than the configured threshold.
+   */
+  @CheckForNull
+  private IssueSpillFile createSpillFile(PostJobContext context) {
+    int threshold = context.config().getInt(IssuesReportPlugin.SPILL_THRESHOLD_KEY).orElse(0);
+    if (threshold <= 0) {
+      return null;
+    }
+    int count = Iterables.size(context.issues()) + Iterables.size(context.resolvedIssues());
+    if (count <= threshold) {
+      return null;
+    }
+    LOG.info("{} issues, keeping their details in {}", count, fs.workDir());
+    return IssueSpillFile.create(fs.workDir());
+  }
+
+  private static Set<RuleKey> collectRuleKeys(PostJobContext context) {
+    Set<RuleKey> ruleKeys = new HashSet<>();
+    context.issues().forEach(issue -> ruleKeys.add(issue.ruleKey()));
+    context.resolvedIssues().forEach(issue -> ruleKeys.add(issue.ruleKey()));
+    return ruleKeys;
+  }
+
   private void processIssues(IssuesReport issuesReport, Iterable<PostJobIssue> issues, boolean resolved) {
     for (PostJobIssue issue : issues) {
-      Rule rule = findRule(issue);
-      ResourceNode resource = inputFilesCollector.getResource(issue.componentKey());
-      if (!validate(issue, rule, resource)) {
-        continue;
+      processIssue(issuesReport, issue, resolved);
+    }
+  }
+
+  /**
+   * Add the issue to the report, and return the resource it was added on, or null if it was ignored.
+   */
+  @CheckForNull
+  private ResourceNode processIssue(IssuesReport issuesReport, PostJobIssue issue, boolean resolved) {
+    RuleDescriptor rule = findRule(issue);
+    ResourceNode resource = inputFilesCollector.getResource(issue.componentKey());
+    if (!validate(issue, rule, resource)) {
+      return null;
+    }
+    if (resolved) {
+      issuesReport.addResolvedIssueOnResource(resource, issue, rule);
+    } else {
+      issuesReport.addIssueOnResource(resource, issue, rule);
+    }
+    return resource;
+  }
+
+  /**
+   * Same as the sequential build, with issues split by component key: all issues of a resource are handled by the same
+   * shard, in their original order. Shards are then merged in the order resources first appear in the issues, so that
+   * the resulting report is identical to the one built sequentially.
+   */
+  private void processIssuesInParallel(IssuesReport issuesReport, PostJobContext context, int threads,
+    @Nullable IssueSpillFile spillFile) {
+    List<PostJobIssue> issues = new ArrayList<>();
+    context.issues().forEach(issues::add);
+    int resolvedFrom = issues.size();
+    context.resolvedIssues().forEach(issues::add);
+
+    int shardCount = threads * SHARDS_PER_THREAD;
+    int[] shardOfIssue = new int[issues.size()];
+    int[] shardSizes = new int[shardCount];
+    for (int i = 0; i < issues.size(); i++) {
+      shardOfIssue[i] = Math.floorMod(Objects.hashCode(issues.get(i).componentKey()), shardCount);
+      shardSizes[shardOfIssue[i]]++;
+    }
+    int[][] positions = new int[shardCount][];
+    for (int shard = 0; shard < shardCount; shard++) {
+      positions[shard] = new int[shardSizes[shard]];
+      shardSizes[shard] = 0;
+    }
+    for (int i = 0; i < issues.size(); i++) {
+      positions[shardOfIssue[i]][shardSizes[shardOfIssue[i]]++] = i;
+    }
+
+    ForkJoinPool pool = new ForkJoinPool(threads);
+    try {
+      List<ForkJoinTask<Shard>> tasks = new ArrayList<>(shardCount);
+      for (int[] shardPositions : positions) {
+        tasks.add(pool.submit(() -> buildShard(issues, shardPositions, resolvedFrom, spillFile)));
+      }
+      Map<Integer, ResourceReport> resourceReportsByFirstPosition = new TreeMap<>();
+      for (ForkJoinTask<Shard> task : tasks) {
+        Shard shard = task.join();
+        issuesReport.getSummary().merge(shard.report.getSummary());
+        shard.firstPositions.forEach((resource, position) -> resourceReportsByFirstPosition.put(position,
+          shard.report.getResourceReportsByResource().get(resource)));
       }
-      if (resolved) {
-        issuesReport.addResolvedIssueOnResource(resource, issue, rule);
-      } else {
-        issuesReport.addIssueOnResource(resource, issue, rule);
+      resourceReportsByFirstPosition.values().forEach(issuesReport::addResourceReport);
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  private Shard buildShard(List<PostJobIssue> issues, int[] positions, int resolvedFrom, @Nullable IssueSpillFile spillFile) {
+    Shard shard = new Shard(spillFile);
+    for (int position : positions) {
+      ResourceNode resource = processIssue(shard.report, issues.get(position), position >= resolvedFrom);
+      if (resource != null) {
+        shard.firstPositions.putIfAbsent(resource, position);
       }
     }
+    return shard;
   }
 
-  private boolean validate(PostJobIssue issue, Rule rule, ResourceNode resource) {
+  private boolean validate(PostJobIssue issue, @Nullable RuleDescriptor rule, @Nullable ResourceNode resource) {
     if (rule == null) {
       LOG.warn("Unknow rule for issue {}", issue);
       return false;
@@ -87,8 +224,17 @@ public class IssuesReportBuilder {
   }
 
   @CheckForNull
-  private Rule findRule(PostJobIssue issue) {
+  private RuleDescriptor findRule(PostJobIssue issue) {
     RuleKey ruleKey = issue.ruleKey();
     return ruleProvider.getRule(ruleKey);
   }
+
+  private static final class Shard {
+    private final IssuesReport report;
+    private final Map<ResourceNode, Integer> firstPositions = new HashMap<>();
+
+    private Shard(@Nullable IssueSpillFile spillFile) {
+      this.report = new IssuesReport(spillFile);
+    }
+  }
 }
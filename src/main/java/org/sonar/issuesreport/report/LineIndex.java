@@ -0,0 +1,159 @@
+/*
+ * Sonar :: Issues Report :: Plugin
+ * Copyright (C) 2013 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.issuesreport.report;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.IntPredicate;
+
+/**
+ * Issues of a resource grouped by line, in a compressed sparse row layout: the distinct lines holding issues are
+ * sorted in {@link #lines}, and the issues of {@code lines[i]} are the ones of the store at positions
+ * {@code issues[offsets[i]]} to {@code issues[offsets[i + 1] - 1]}, in the order they were reported. Issues without
+ * line are on line 0.
+ */
+final class LineIndex {
+
+  private final IssueStore store;
+  private final int[] lines;
+  private final int[] offsets;
+  private final int[] issues;
+  // Merged [line - radius, line + radius] windows as from/to pairs, computed on first use
+  private int[] windows;
+  private int windowRadius;
+
+  private LineIndex(IssueStore store, int[] lines, int[] offsets, int[] issues) {
+    this.store = store;
+    this.lines = lines;
+    this.offsets = offsets;
+    this.issues = issues;
+  }
+
+  static LineIndex of(IssueStore store, IntPredicate filter) {
+    int count = 0;
+    int[] issueLines = new int[store.size()];
+    for (int issue = 0; issue < store.size(); issue++) {
+      if (filter.test(issue)) {
+        issueLines[count] = store.line(issue);
+        count++;
+      }
+    }
+    if (count == 0) {
+      return new LineIndex(store, new int[0], new int[] {0}, new int[0]);
+    }
+
+    int[] lines = Arrays.copyOf(issueLines, count);
+    Arrays.sort(lines);
+    int distinct = 1;
+    for (int i = 1; i < count; i++) {
+      if (lines[i] != lines[distinct - 1]) {
+        lines[distinct] = lines[i];
+        distinct++;
+      }
+    }
+    lines = Arrays.copyOf(lines, distinct);
+
+    // Count issues per line, then turn counts into start offsets
+    int[] offsets = new int[distinct + 1];
+    for (int i = 0; i < count; i++) {
+      offsets[Arrays.binarySearch(lines, issueLines[i]) + 1]++;
+    }
+    for (int i = 0; i < distinct; i++) {
+      offsets[i + 1] += offsets[i];
+    }
+
+    int[] sorted = new int[count];
+    int[] next = Arrays.copyOf(offsets, distinct);
+    int i = 0;
+    for (int issue = 0; issue < store.size(); issue++) {
+      if (filter.test(issue)) {
+        sorted[next[Arrays.binarySearch(lines, issueLines[i])]++] = issue;
+        i++;
+      }
+    }
+    return new LineIndex(store, lines, offsets, sorted);
+  }
+
+  List<ReportIssue> issuesAt(int line) {
+    int index = Arrays.binarySearch(lines, line);
+    if (index < 0) {
+      return Collections.emptyList();
+    }
+    return store.view(issues, offsets[index], offsets[index + 1]);
+  }
+
+  /**
+   * Lines to display around issues: one range per group of lines closer than {@code 2 * radius + 1}, clipped to
+   * {@code [1, lineCount]}.
+   */
+  List<LineRange> windows(int radius, int lineCount) {
+    prepareWindows(radius);
+    List<LineRange> ranges = new ArrayList<>(windows.length / 2);
+    for (int i = 0; i < windows.length; i += 2) {
+      int from = Math.max(windows[i], 1);
+      int to = Math.min(windows[i + 1], lineCount);
+      if (from <= to) {
+        ranges.add(new LineRange(from, to));
+      }
+    }
+    return ranges;
+  }
+
+  /**
+   * Merge the windows of {@code radius} lines ahead of {@link #windows(int, int)}.
+   */
+  void prepareWindows(int radius) {
+    if (windows == null || windowRadius != radius) {
+      windows = mergeWindows(radius);
+      windowRadius = radius;
+    }
+  }
+
+  private int[] mergeWindows(int radius) {
+    int[] merged = new int[lines.length * 2];
+    int count = 0;
+    for (int line : lines) {
+      int from = line - radius;
+      int to = line + radius;
+      if (count > 0 && from <= merged[count - 1] + 1) {
+        merged[count - 1] = to;
+      } else {
+        merged[count] = from;
+        merged[count + 1] = to;
+        count += 2;
+      }
+    }
+    return Arrays.copyOf(merged, count);
+  }
+
+  /**
+   * Whether at least one issue is between {@code from} and {@code to}, both inclusive.
+   */
+  boolean hasIssuesBetween(int from, int to) {
+    int index = Arrays.binarySearch(lines, from);
+    if (index < 0) {
+      index = -index - 1;
+    }
+    return index < lines.length && lines[index] <= to;
+  }
+
+}
@@ -0,0 +1,94 @@
+/*
+ * Sonar :: Issues Report :: Plugin
+ * Copyright (C) 2013 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.issuesreport.report;
+
+import org.sonar.api.batch.rule.Severity;
+import org.sonar.api.rule.RuleKey;
+import org.sonar.issuesreport.provider.RuleDescriptor;
+
+import javax.annotation.CheckForNull;
+
+/**
+ * Read-only view on an issue of the report. Accessors are named after the ones of
+ * {@link org.sonar.api.batch.postjob.issue.PostJobIssue}.
+ */
+public final class ReportIssue {
+
+  private final IssueStore store;
+  private final int index;
+
+  ReportIssue(IssueStore store, int index) {
+    this.store = store;
+    this.index = index;
+  }
+
+  public String key() {
+    return store.key(index);
+  }
+
+  public RuleDescriptor rule() {
+    return store.rule(index);
+  }
+
+  public RuleKey ruleKey() {
+    return store.rule(index).ruleKey();
+  }
+
+  @CheckForNull
+  public Integer line() {
+    int line = store.line(index);
+    return line > 0 ? line : null;
+  }
+
+  public Severity severity() {
+    return store.severity(index);
+  }
+
+  public boolean isNew() {
+    return store.isNew(index);
+  }
+
+  @CheckForNull
+  public String message() {
+    return store.message(index);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    return key().equals(((ReportIssue) o).key());
+  }
+
+  @Override
+  public int hashCode() {
+    return key().hashCode();
+  }
+
+  @Override
+  public String toString() {
+    return key();
+  }
+
+}
@@ -22,7 +22,7 @@ package org.sonar.issuesreport.report;
 import org.apache.commons.lang.ObjectUtils;
 import org.apache.commons.lang.builder.ToStringBuilder;
 import org.sonar.api.batch.rule.Severity;
-import org.sonar.api.rules.Rule;
+import org.sonar.issuesreport.provider.RuleDescriptor;
 
 /**
  * A same rule can be present with different severity if severity was manually changed so we need this special key that
@@ -30,15 +30,15 @@ import org.sonar.api.rules.Rule;
  *
  */
 public class ReportRuleKey implements Comparable<ReportRuleKey> {
-  private final Rule rule;
+  private final RuleDescriptor rule;
   private final Severity severity;
 
-  public ReportRuleKey(Rule rule, Severity severity) {
+  public ReportRuleKey(RuleDescriptor rule, Severity severity) {
     this.rule = rule;
     this.severity = severity;
   }
 
-  public Rule getRule() {
+  public RuleDescriptor getRule() {
     return rule;
   }
 
@@ -68,7 +68,7 @@ public class ReportRuleKey implements Comparable<ReportRuleKey> {
   @Override
   public int compareTo(ReportRuleKey o) {
     if (severity == o.getSeverity()) {
-      return getRule().ruleKey().toString().compareTo(o.getRule().ruleKey().toString());
+      return rule.getFullKey().compareTo(o.rule.getFullKey());
     }
     return o.getSeverity().compareTo(severity);
   }
@@ -19,22 +19,44 @@
  */
 package org.sonar.issuesreport.report;
 
-import com.google.common.collect.Maps;
-
 import org.sonar.api.batch.postjob.issue.PostJobIssue;
-import org.sonar.api.rules.Rule;
+import org.sonar.api.batch.rule.Severity;
+import org.sonar.issuesreport.provider.RuleDescriptor;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
+import javax.annotation.CheckForNull;
+
+/**
+ * Totals of the whole report. Counters are indexed by severity and by {@link RuleDescriptor#getId() rule id}, so that
+ * adding an issue does not allocate anything once its rule and severity have been seen.
+ */
 public class ReportSummary {
 
+  private static final Severity[] SEVERITIES = Severity.values();
+  private static final int INITIAL_RULE_CAPACITY = 64;
+
   private final IssueVariation total = new IssueVariation();
+  private final Map<Severity, IssueVariation> totalBySeverity = new EnumMap<>(Severity.class);
 
-  private final Map<ReportRuleKey, RuleReport> ruleReportByRuleKey = Maps.newHashMap();
-  private final Map<String, IssueVariation> totalByRuleKey = Maps.newHashMap();
-  private final Map<String, IssueVariation> totalBySeverity = Maps.newHashMap();
+  // Indexed by rule id
+  private RuleDescriptor[] rules = new RuleDescriptor[INITIAL_RULE_CAPACITY];
+  private int[] countByRule = new int[INITIAL_RULE_CAPACITY];
+  private int[] newCountByRule = new int[INITIAL_RULE_CAPACITY];
+  private int[] resolvedCountByRule = new int[INITIAL_RULE_CAPACITY];
+  // Indexed by rule id * number of severities + severity ordinal
+  private RuleReport[] ruleReports = new RuleReport[INITIAL_RULE_CAPACITY * SEVERITIES.length];
+  // Sorted on first read, and dropped whenever an issue is added
+  private List<RuleReport> sortedRuleReports;
+  // Set when frozen
+  private Map<String, IssueVariation> frozenTotalBySeverity;
+  private Map<String, IssueVariation> frozenTotalByRuleKey;
 
   public ReportSummary() {
   }
@@ -43,53 +65,158 @@ public class ReportSummary {
     return total;
   }
 
-  public void addIssue(PostJobIssue issue, Rule rule) {
-    ReportRuleKey reportRuleKey = new ReportRuleKey(rule, issue.severity());
-    initMaps(reportRuleKey);
-    ruleReportByRuleKey.get(reportRuleKey).getTotal().incrementCountInCurrentAnalysis();
+  public void addIssue(PostJobIssue issue, RuleDescriptor rule) {
+    checkNotFrozen();
+    sortedRuleReports = null;
+    Severity severity = issue.severity();
+    int ruleId = rule.getId();
+    RuleReport ruleReport = initRule(rule, severity);
+    IssueVariation severityTotal = initSeverity(severity);
+    ruleReport.getTotal().incrementCountInCurrentAnalysis();
     total.incrementCountInCurrentAnalysis();
-    totalByRuleKey.get(rule.ruleKey().toString()).incrementCountInCurrentAnalysis();
-    totalBySeverity.get(issue.severity().toString()).incrementCountInCurrentAnalysis();
+    countByRule[ruleId]++;
+    severityTotal.incrementCountInCurrentAnalysis();
     if (issue.isNew()) {
       total.incrementNewIssuesCount();
-      ruleReportByRuleKey.get(reportRuleKey).getTotal().incrementNewIssuesCount();
-      totalByRuleKey.get(rule.ruleKey().toString()).incrementNewIssuesCount();
-      totalBySeverity.get(issue.severity().toString()).incrementNewIssuesCount();
+      ruleReport.getTotal().incrementNewIssuesCount();
+      newCountByRule[ruleId]++;
+      severityTotal.incrementNewIssuesCount();
     }
   }
 
+  /**
+   * Totals keyed by severity name, for the template.
+   */
   public Map<String, IssueVariation> getTotalBySeverity() {
-    return totalBySeverity;
+    if (frozenTotalBySeverity != null) {
+      return frozenTotalBySeverity;
+    }
+    Map<String, IssueVariation> result = new LinkedHashMap<>();
+    totalBySeverity.forEach((severity, variation) -> result.put(severity.toString(), variation));
+    return result;
   }
 
+  @CheckForNull
+  public IssueVariation getTotal(Severity severity) {
+    return totalBySeverity.get(severity);
+  }
+
+  /**
+   * Totals keyed by rule key, for the template.
+   */
   public Map<String, IssueVariation> getTotalByRuleKey() {
-    return totalByRuleKey;
+    if (frozenTotalByRuleKey != null) {
+      return frozenTotalByRuleKey;
+    }
+    Map<String, IssueVariation> result = new LinkedHashMap<>();
+    for (int ruleId = 0; ruleId < rules.length; ruleId++) {
+      if (rules[ruleId] != null) {
+        result.put(rules[ruleId].getFullKey(),
+          new IssueVariation(countByRule[ruleId], newCountByRule[ruleId], resolvedCountByRule[ruleId]));
+      }
+    }
+    return result;
   }
 
-  public void addResolvedIssue(PostJobIssue issue, Rule rule) {
-    ReportRuleKey reportRuleKey = new ReportRuleKey(rule, issue.severity());
-    initMaps(reportRuleKey);
+  public void addResolvedIssue(PostJobIssue issue, RuleDescriptor rule) {
+    checkNotFrozen();
+    sortedRuleReports = null;
+    Severity severity = issue.severity();
+    RuleReport ruleReport = initRule(rule, severity);
     total.incrementResolvedIssuesCount();
-    ruleReportByRuleKey.get(reportRuleKey).getTotal().incrementResolvedIssuesCount();
-    totalByRuleKey.get(rule.ruleKey().toString()).incrementResolvedIssuesCount();
-    totalBySeverity.get(issue.severity().toString()).incrementResolvedIssuesCount();
+    ruleReport.getTotal().incrementResolvedIssuesCount();
+    resolvedCountByRule[rule.getId()]++;
+    initSeverity(severity).incrementResolvedIssuesCount();
+  }
+
+  /**
+   * Add the totals of another summary to this one.
+   */
+  void merge(ReportSummary other) {
+    checkNotFrozen();
+    sortedRuleReports = null;
+    total.add(other.total);
+    other.totalBySeverity.forEach((severity, variation) -> initSeverity(severity).add(variation));
+    for (int ruleId = 0; ruleId < other.rules.length; ruleId++) {
+      if (other.rules[ruleId] == null) {
+        continue;
+      }
+      ensureCapacity(ruleId);
+      rules[ruleId] = other.rules[ruleId];
+      countByRule[ruleId] += other.countByRule[ruleId];
+      newCountByRule[ruleId] += other.newCountByRule[ruleId];
+      resolvedCountByRule[ruleId] += other.resolvedCountByRule[ruleId];
+      for (Severity severity : SEVERITIES) {
+        RuleReport ruleReport = other.ruleReports[ruleId * SEVERITIES.length + severity.ordinal()];
+        if (ruleReport != null) {
+          initRule(ruleReport.getRule(), severity).getTotal().add(ruleReport.getTotal());
+        }
+      }
+    }
   }
 
-  private void initMaps(ReportRuleKey reportRuleKey) {
-    if (!ruleReportByRuleKey.containsKey(reportRuleKey)) {
-      ruleReportByRuleKey.put(reportRuleKey, new RuleReport(reportRuleKey));
+  /**
+   * Make the summary read-only, see {@link IssuesReport#freeze()}.
+   */
+  void freeze() {
+    if (frozenTotalBySeverity != null) {
+      return;
     }
-    if (!totalByRuleKey.containsKey(reportRuleKey.getRule().ruleKey().toString())) {
-      totalByRuleKey.put(reportRuleKey.getRule().ruleKey().toString(), new IssueVariation());
+    getRuleReports();
+    frozenTotalByRuleKey = Collections.unmodifiableMap(getTotalByRuleKey());
+    frozenTotalBySeverity = Collections.unmodifiableMap(getTotalBySeverity());
+  }
+
+  private void checkNotFrozen() {
+    if (frozenTotalBySeverity != null) {
+      throw new IllegalStateException("The report summary is frozen");
     }
-    if (!totalBySeverity.containsKey(reportRuleKey.getSeverity().toString())) {
-      totalBySeverity.put(reportRuleKey.getSeverity().toString(), new IssueVariation());
+  }
+
+  private void ensureCapacity(int ruleId) {
+    if (ruleId >= rules.length) {
+      int capacity = Math.max(ruleId + 1, rules.length * 2);
+      rules = Arrays.copyOf(rules, capacity);
+      countByRule = Arrays.copyOf(countByRule, capacity);
+      newCountByRule = Arrays.copyOf(newCountByRule, capacity);
+      resolvedCountByRule = Arrays.copyOf(resolvedCountByRule, capacity);
+      ruleReports = Arrays.copyOf(ruleReports, capacity * SEVERITIES.length);
     }
   }
 
+  private RuleReport initRule(RuleDescriptor rule, Severity severity) {
+    int ruleId = rule.getId();
+    ensureCapacity(ruleId);
+    rules[ruleId] = rule;
+    int index = ruleId * SEVERITIES.length + severity.ordinal();
+    RuleReport ruleReport = ruleReports[index];
+    if (ruleReport == null) {
+      ruleReport = new RuleReport(new ReportRuleKey(rule, severity));
+      ruleReports[index] = ruleReport;
+    }
+    return ruleReport;
+  }
+
+  private IssueVariation initSeverity(Severity severity) {
+    IssueVariation variation = totalBySeverity.get(severity);
+    if (variation == null) {
+      variation = new IssueVariation();
+      totalBySeverity.put(severity, variation);
+    }
+    return variation;
+  }
+
   public List<RuleReport> getRuleReports() {
-    List<RuleReport> result = new ArrayList<>(ruleReportByRuleKey.values());
-    result.sort(new RuleReportComparator());
-    return result;
+    if (sortedRuleReports == null) {
+      List<RuleReport> result = new ArrayList<>();
+      for (RuleReport ruleReport : ruleReports) {
+        if (ruleReport != null) {
+          result.add(ruleReport);
+        }
+      }
+      result.sort(new RuleReportComparator());
+      sortedRuleReports = Collections.unmodifiableList(result);
+    }
+    return sortedRuleReports;
   }
 }
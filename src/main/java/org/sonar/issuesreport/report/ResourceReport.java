@@ -21,31 +21,42 @@ package org.sonar.issuesreport.report;
 
 import com.google.common.collect.Maps;
 
-import org.apache.commons.collections.CollectionUtils;
 import org.sonar.api.batch.postjob.issue.PostJobIssue;
 import org.sonar.api.batch.rule.Severity;
-import org.sonar.api.rules.Rule;
 import org.sonar.issuesreport.fs.ResourceNode;
+import org.sonar.issuesreport.provider.RuleDescriptor;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nullable;
 
 public final class ResourceReport {
+  /**
+   * Number of source lines displayed before and after each line having issues.
+   */
+  private static final int DISPLAYED_LINES_AROUND_ISSUE = 2;
+
   private final ResourceNode resource;
   private final IssueVariation total = new IssueVariation();
   private final Map<ReportRuleKey, RuleReport> ruleReportByRuleKey = Maps.newHashMap();
 
-  private List<PostJobIssue> issues = new ArrayList<>();
-  private Map<Integer, List<PostJobIssue>> issuesPerLine = Maps.newHashMap();
-  private Map<Integer, List<PostJobIssue>> newIssuesPerLine = Maps.newHashMap();
-  private Map<Rule, AtomicInteger> issuesByRule = Maps.newHashMap();
-  private Map<Severity, AtomicInteger> issuesBySeverity = Maps.newHashMap();
+  private final IssueStore issues;
+  // Built on first read, and dropped whenever an issue is added. Built once for all when frozen.
+  private LineIndex issuesPerLine;
+  private LineIndex newIssuesPerLine;
+  private List<RuleReport> sortedRuleReports;
+  private boolean frozen;
 
   public ResourceReport(ResourceNode resource) {
+    this(resource, null);
+  }
+
+  ResourceReport(ResourceNode resource, @Nullable IssueSpillFile spillFile) {
     this.resource = resource;
+    this.issues = new IssueStore(spillFile);
   }
 
   public ResourceNode getResourceNode() {
@@ -64,92 +75,102 @@ public final class ResourceReport {
     return total;
   }
 
-  public List<PostJobIssue> getIssues() {
-    return issues;
+  public List<ReportIssue> getIssues() {
+    return issues.all();
   }
 
-  public Map<Integer, List<PostJobIssue>> getIssuesPerLine() {
-    return issuesPerLine;
+  public List<ReportIssue> getIssuesAtLine(int lineId, boolean all) {
+    return lineIndex(all).issuesAt(lineId);
   }
 
-  public List<PostJobIssue> getIssuesAtLine(int lineId, boolean all) {
+  private LineIndex lineIndex(boolean all) {
     if (all) {
-      if (issuesPerLine.containsKey(lineId)) {
-        return issuesPerLine.get(lineId);
+      if (issuesPerLine == null) {
+        issuesPerLine = LineIndex.of(issues, issue -> true);
       }
-    } else if (newIssuesPerLine.containsKey(lineId)) {
-      return newIssuesPerLine.get(lineId);
+      return issuesPerLine;
+    }
+    if (newIssuesPerLine == null) {
+      newIssuesPerLine = LineIndex.of(issues, issues::isNew);
     }
-    return Collections.emptyList();
+    return newIssuesPerLine;
   }
 
-  public void addIssue(PostJobIssue issue, Rule rule) {
+  public void addIssue(PostJobIssue issue, RuleDescriptor rule) {
+    checkNotFrozen();
     Severity severity = issue.severity();
     ReportRuleKey reportRuleKey = new ReportRuleKey(rule, severity);
     initMaps(reportRuleKey);
-    issues.add(issue);
-    Integer line = issue.line();
-    line = line != null ? line : 0;
-    if (!issuesPerLine.containsKey(line)) {
-      issuesPerLine.put(line, new ArrayList<>());
-    }
-    issuesPerLine.get(line).add(issue);
-    if (!issuesByRule.containsKey(rule)) {
-      issuesByRule.put(rule, new AtomicInteger());
-    }
-    issuesByRule.get(rule).incrementAndGet();
-    if (!issuesBySeverity.containsKey(severity)) {
-      issuesBySeverity.put(severity, new AtomicInteger());
-    }
-    issuesBySeverity.get(severity).incrementAndGet();
+    issues.add(issue, rule);
+    issuesPerLine = null;
+    newIssuesPerLine = null;
+    sortedRuleReports = null;
     ruleReportByRuleKey.get(reportRuleKey).getTotal().incrementCountInCurrentAnalysis();
     total.incrementCountInCurrentAnalysis();
     if (issue.isNew()) {
-      if (!newIssuesPerLine.containsKey(line)) {
-        newIssuesPerLine.put(line, new ArrayList<>());
-      }
-      newIssuesPerLine.get(line).add(issue);
       total.incrementNewIssuesCount();
       ruleReportByRuleKey.get(reportRuleKey).getTotal().incrementNewIssuesCount();
     }
   }
 
-  public void addResolvedIssue(PostJobIssue issue, Rule rule) {
+  public void addResolvedIssue(PostJobIssue issue, RuleDescriptor rule) {
+    checkNotFrozen();
+    sortedRuleReports = null;
     ReportRuleKey reportRuleKey = new ReportRuleKey(rule, issue.severity());
     initMaps(reportRuleKey);
     total.incrementResolvedIssuesCount();
     ruleReportByRuleKey.get(reportRuleKey).getTotal().incrementResolvedIssuesCount();
   }
 
+  /**
+   * Make the report read-only, see {@link IssuesReport#freeze()}.
+   */
+  void freeze() {
+    if (frozen) {
+      return;
+    }
+    issues.compact();
+    lineIndex(true).prepareWindows(DISPLAYED_LINES_AROUND_ISSUE);
+    lineIndex(false).prepareWindows(DISPLAYED_LINES_AROUND_ISSUE);
+    getRuleReports();
+    frozen = true;
+  }
+
+  private void checkNotFrozen() {
+    if (frozen) {
+      throw new IllegalStateException("The report of " + resource.getKey() + " is frozen");
+    }
+  }
+
   private void initMaps(ReportRuleKey reportRuleKey) {
     if (!ruleReportByRuleKey.containsKey(reportRuleKey)) {
       ruleReportByRuleKey.put(reportRuleKey, new RuleReport(reportRuleKey));
     }
   }
 
-  public boolean isDisplayableLine(Integer lineNumber, boolean all) {
+  public boolean isDisplayableLine(@Nullable Integer lineNumber, boolean all) {
     if (lineNumber == null || lineNumber < 1) {
       return false;
     }
-    for (int i = lineNumber - 2; i <= lineNumber + 2; i++) {
-      if (hasIssues(i, all)) {
-        return true;
-      }
-    }
-    return false;
+    int line = lineNumber;
+    return lineIndex(all).hasIssuesBetween(line - DISPLAYED_LINES_AROUND_ISSUE, line + DISPLAYED_LINES_AROUND_ISSUE);
   }
 
-  private boolean hasIssues(Integer lineId, boolean all) {
-    if (all) {
-      return CollectionUtils.isNotEmpty(issuesPerLine.get(lineId));
-    }
-    return CollectionUtils.isNotEmpty(newIssuesPerLine.get(lineId));
+  /**
+   * Ranges of displayable lines, in ascending order, for a source file of {@code lineCount} lines. Overlapping and
+   * adjacent windows are merged, so that the template only visits lines it has to display.
+   */
+  public List<LineRange> getDisplayableLineRanges(boolean all, int lineCount) {
+    return lineIndex(all).windows(DISPLAYED_LINES_AROUND_ISSUE, lineCount);
   }
 
   public List<RuleReport> getRuleReports() {
-    List<RuleReport> result = new ArrayList<>(ruleReportByRuleKey.values());
-    result.sort(new RuleReportComparator());
-    return result;
+    if (sortedRuleReports == null) {
+      List<RuleReport> result = new ArrayList<>(ruleReportByRuleKey.values());
+      result.sort(new RuleReportComparator());
+      sortedRuleReports = Collections.unmodifiableList(result);
+    }
+    return sortedRuleReports;
   }
 
 }
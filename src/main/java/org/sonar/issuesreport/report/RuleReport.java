@@ -20,7 +20,7 @@
 package org.sonar.issuesreport.report;
 
 import org.apache.commons.lang.builder.ToStringBuilder;
-import org.sonar.api.rules.Rule;
+import org.sonar.issuesreport.provider.RuleDescriptor;
 
 public final class RuleReport {
   private final ReportRuleKey reportRuleKey;
@@ -42,7 +42,7 @@ public final class RuleReport {
     return reportRuleKey.getSeverity().toString();
   }
 
-  public Rule getRule() {
+  public RuleDescriptor getRule() {
     return reportRuleKey.getRule();
   }
 
@@ -277,22 +277,23 @@
   <div id="summary-per-file">
   <#list report.getResourceReports() as resourceReport>
     <#if complete || (resourceReport.getTotal().getNewIssuesCount() > 0)>
+    <@fragmentCache resource=resourceReport index=resourceReport_index complete=complete; resourceId>
       <#assign issueId=0>
       <#if resourceReport.getTotal().getNewIssuesCount() = 0>
       <#assign tableCss = 'all'>
       <#else>
       <#assign tableCss = ''>
       </#if>
-  <table width="100%" class="data ${tableCss}" id="resource-${resourceReport_index?c}">
+  <table width="100%" class="data ${tableCss}" id="resource-${resourceId}">
     <thead>
     <tr class="total">
       <th align="left" colspan="2" nowrap>
         <div class="file_title">
           <img src="issuesreport_files/${resourceReport.getType()}.png" title="Resource icon"/>
-          <a href="#" onclick="$('.resource-details-${resourceReport_index?c}').toggleClass('masked'); return false;" style="color: black">${resourceReport.getName()}</a>
+          <a href="#" onclick="$('.resource-details-${resourceId}').toggleClass('masked'); return false;" style="color: black">${resourceReport.getName()}</a>
         </div>
       </th>
-      <th align="right" width="1%" nowrap class="resource-details-${resourceReport_index?c}">
+      <th align="right" width="1%" nowrap class="resource-details-${resourceId}">
         <#if resourceReport.getTotal().getNewIssuesCount() gt 0>
           <span class="worst" id="new-total">${resourceReport.getTotal().getNewIssuesCount()?c}</span>
         <#else>
@@ -301,7 +302,7 @@
         <br/>New issues
       </th>
       <#if complete>
-      <th align="right" width="1%" nowrap class="resource-details-${resourceReport_index?c}">
+      <th align="right" width="1%" nowrap class="resource-details-${resourceId}">
         <#if resourceReport.getTotal().getResolvedIssuesCount() gt 0>
           <span class="better" id="resolved-total">${resourceReport.getTotal().getResolvedIssuesCount()?c}</span>
         <#else>
@@ -309,13 +310,13 @@
         </#if>
         <br/>Resolved issues
       </th>
-      <th align="right" width="1%" nowrap class="resource-details-${resourceReport_index?c} all">
+      <th align="right" width="1%" nowrap class="resource-details-${resourceId} all">
         <span id="current-total">${resourceReport.getTotal().getCountInCurrentAnalysis()?c}</span><br/>Issues
       </th>
       </#if>
     </tr>
     </thead>
-    <tbody class="resource-details-${resourceReport_index?c}">
+    <tbody class="resource-details-${resourceId}">
     <#if complete>
     <#list resourceReport.getRuleReports() as ruleReport>
       <tr class="hoverable all">
@@ -391,21 +392,21 @@
       <tr>
         <td colspan="${colspan}">
           <table class="sources" border="0" cellpadding="0" cellspacing="0">
-            <#list sourceProvider.getEscapedSource(resourceReport.getResourceNode()) as line>
-              <#assign lineIndex=line_index+1>
-              <#if resourceReport.isDisplayableLine(lineIndex, complete)>
-                <tr id="${resourceReport_index?c}L${lineIndex?c}" class="row">
+            <#assign source=sourceProvider.getSource(resourceReport.getResourceNode())>
+            <#list resourceReport.getDisplayableLineRanges(complete, source.getLineCount()) as range>
+              <#list range.getFrom()..range.getTo() as lineIndex>
+                <tr id="${resourceId}L${lineIndex?c}" class="row">
                   <td class="lid ">${lineIndex?c}</td>
                   <td class="line ">
-                    <pre>${line}</pre>
+                    <pre><@escapeHtml value=source.getLine(lineIndex)/></pre>
                   </td>
                 </tr>
-                <tr id="${resourceReport_index}S${lineIndex?c}" class="blockSep">
+                <tr id="${resourceId}S${lineIndex?c}" class="blockSep">
                   <td colspan="2"></td>
                 </tr>
                 <#assign issues=resourceReport.getIssuesAtLine(lineIndex, complete)>
                 <#if issues?has_content>
-                  <tr id="${resourceReport_index?c}LV${lineIndex?c}" class="row">
+                  <tr id="${resourceId}LV${lineIndex?c}" class="row">
                     <td class="lid"></td>
                     <td class="issues">
                       <#list issues as issue>
@@ -440,13 +441,14 @@
                     </td>
                   </tr>
                 </#if>
-              </#if>
+              </#list>
             </#list>
           </table>
         </td>
       </tr>
     </tbody>
   </table>
+    </@fragmentCache>
     </#if>
   </#list>
   </div>
@@ -22,11 +22,13 @@ package org.sonar.issuesreport;
 import org.sonar.api.batch.postjob.issue.PostJobIssue;
 import org.sonar.api.batch.rule.Severity;
 import org.sonar.api.rule.RuleKey;
-import org.sonar.api.rules.Rule;
 import org.sonar.issuesreport.fs.ResourceNode;
+import org.sonar.issuesreport.provider.RuleDescriptor;
 import org.sonar.issuesreport.report.IssuesReport;
 
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.UUID;
 
 import static org.mockito.Mockito.mock;
@@ -34,15 +36,17 @@ import static org.mockito.Mockito.when;
 
 public class IssuesReportFakeUtils {
 
+  private static final Map<RuleKey, Integer> RULE_IDS = new HashMap<>();
+
   public static IssuesReport sampleReportWith2IssuesPerFile(ResourceNode... files) {
     IssuesReport report = new IssuesReport();
     report.setTitle("Fake report");
     report.setDate(new Date());
 
     for (ResourceNode file : files) {
-      Rule rule1 = fakeRule(RuleKey.of("foo", "bar"));
+      RuleDescriptor rule1 = fakeRule(RuleKey.of("foo", "bar"));
       PostJobIssue issue1 = fakeIssue(true, RuleKey.of("foo", "bar"), file.getKey(), null);
-      Rule rule2 = fakeRule(RuleKey.of("foo", "bar2"));
+      RuleDescriptor rule2 = fakeRule(RuleKey.of("foo", "bar2"));
       PostJobIssue issue2 = fakeIssue(false, RuleKey.of("foo", "bar2"), file.getKey(), 6);
 
       report.addIssueOnResource(file, issue1, rule1);
@@ -63,9 +67,13 @@ public class IssuesReportFakeUtils {
     return issue;
   }
 
-  public static Rule fakeRule(RuleKey ruleKey) {
-    Rule rule = Rule.create(ruleKey.repository(), ruleKey.rule());
-    return rule;
+  public static synchronized RuleDescriptor fakeRule(RuleKey ruleKey) {
+    Integer id = RULE_IDS.get(ruleKey);
+    if (id == null) {
+      id = RULE_IDS.size();
+      RULE_IDS.put(ruleKey, id);
+    }
+    return new RuleDescriptor(id, ruleKey, null);
   }
 
   public static ResourceNode fakeFile(String effectiveKey) {
@@ -36,6 +36,6 @@ public class IssuesReportPluginTest {
 
     new IssuesReportPlugin().define(context);
 
-    assertThat(context.getExtensions()).hasSize(8);
+    assertThat(context.getExtensions()).hasSize(10);
   }
 }
@@ -24,7 +24,10 @@ import org.junit.Test;
 import org.sonar.api.batch.postjob.PostJobContext;
 import org.sonar.api.batch.postjob.PostJobDescriptor;
 import org.sonar.api.config.Configuration;
+import org.sonar.issuesreport.fs.ResourceIndex;
 import org.sonar.issuesreport.printer.ReportPrinter;
+import org.sonar.issuesreport.provider.RuleFetchStats;
+import org.sonar.issuesreport.provider.RuleProvider;
 import org.sonar.issuesreport.report.IssuesReport;
 import org.sonar.issuesreport.report.IssuesReportBuilder;
 
@@ -44,6 +47,8 @@ public class ReportJobTest {
   private static final String PROP_1 = "prop#1";
   private static final String PROP_2 = "prop#2";
   private IssuesReportBuilder issuesReportBuilder;
+  private RuleProvider ruleProvider;
+  private ResourceIndex resourceIndex;
   private ReportPrinter printer1;
   private ReportPrinter printer2;
   private ReportJob job;
@@ -52,12 +57,16 @@ public class ReportJobTest {
   public void prepare() {
     issuesReportBuilder = mock(IssuesReportBuilder.class);
     when(issuesReportBuilder.buildReport(any(PostJobContext.class))).thenReturn(new IssuesReport());
+    ruleProvider = mock(RuleProvider.class);
+    when(ruleProvider.getStats()).thenReturn(new RuleFetchStats());
     printer1 = mock(ReportPrinter.class);
     when(printer1.getRequiredProperty()).thenReturn(PROP_1);
     printer2 = mock(ReportPrinter.class);
     when(printer2.getRequiredProperty()).thenReturn(PROP_2);
 
-    job = new ReportJob(issuesReportBuilder, new ReportPrinter[] {printer1, printer2});
+    resourceIndex = mock(ResourceIndex.class);
+
+    job = new ReportJob(issuesReportBuilder, ruleProvider, resourceIndex, new ReportPrinter[] {printer1, printer2});
   }
 
   @Test
@@ -72,6 +81,7 @@ public class ReportJobTest {
     verify(issuesReportBuilder, never()).buildReport(any(PostJobContext.class));
     verify(printer1, never()).print(any(IssuesReport.class));
     verify(printer2, never()).print(any(IssuesReport.class));
+    verify(ruleProvider, never()).getStats();
   }
 
   @Test
@@ -102,6 +112,8 @@ public class ReportJobTest {
     verify(issuesReportBuilder, only()).buildReport(jobContext);
     verify(printer1, times(1)).print(any(IssuesReport.class));
     verify(printer2, times(1)).print(any(IssuesReport.class));
+    verify(ruleProvider, only()).getStats();
+    verify(resourceIndex).clear();
   }
 
   @Test
@@ -6,9 +6,19 @@ import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 import org.sonar.api.CoreProperties;
 import org.sonar.api.batch.fs.internal.TestInputFileBuilder;
+import org.sonar.api.batch.rule.internal.ActiveRulesBuilder;
 import org.sonar.api.batch.sensor.internal.SensorContextTester;
+import org.sonar.api.rule.RuleKey;
+import org.sonar.issuesreport.IssuesReportPlugin;
+import org.sonar.issuesreport.provider.RuleProvider;
+
+import java.util.Arrays;
 
 import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 
 public class InputFilesCollector_ExecuteTest {
 
@@ -17,12 +27,18 @@ public class InputFilesCollector_ExecuteTest {
 
   private SensorContextTester sensorContext;
 
+  private RuleProvider ruleProvider;
+
+  private ResourceIndex resourceIndex;
+
   private InputFilesCollector inputFilesCollector;
 
   @Before
   public void setup() {
      sensorContext = SensorContextTester.create(temp.getRoot());
-     inputFilesCollector = new InputFilesCollector();
+     ruleProvider = mock(RuleProvider.class);
+     resourceIndex = new ResourceIndex();
+     inputFilesCollector = new InputFilesCollector(ruleProvider, resourceIndex);
   }
 
   @Test
@@ -52,4 +68,59 @@ public class InputFilesCollector_ExecuteTest {
     assertThat(inputFilesCollector.getResource("1:2.3")).isNull();
   }
 
+  @Test
+  public void testResourcesBuiltOnDemand() {
+    // given
+    for (int i = 0; i < 100; i++) {
+      sensorContext.fileSystem().add(new TestInputFileBuilder("a", "File" + i + ".java")
+                                         .setModuleBaseDir(temp.getRoot().toPath()).build());
+    }
+    // when
+    inputFilesCollector.execute(sensorContext);
+
+    // then
+    assertThat(resourceIndex.size()).isEqualTo(100);
+    ResourceNode resource = inputFilesCollector.getResource("a:File42.java");
+    assertThat(resource.getKey()).isEqualTo("a:File42.java");
+    assertThat(inputFilesCollector.getResource("a:File42.java")).isSameAs(resource);
+  }
+
+  @Test
+  public void testResourcesReleased() {
+    // given
+    sensorContext.fileSystem().add(new TestInputFileBuilder("a","b.c")
+                                       .setModuleBaseDir(temp.getRoot().toPath()).build());
+    inputFilesCollector.execute(sensorContext);
+
+    // when
+    resourceIndex.clear();
+
+    // then
+    assertThat(inputFilesCollector.getResource("a:b.c")).isNull();
+    assertThat(resourceIndex.size()).isEqualTo(0);
+  }
+
+  @Test
+  public void testWarmUpDisabledByDefault() {
+    // when
+    inputFilesCollector.execute(sensorContext);
+
+    // then
+    verify(ruleProvider, never()).startWarmUp(anyCollectionOf(RuleKey.class));
+  }
+
+  @Test
+  public void testWarmUpOfActiveRules() {
+    // given
+    RuleKey ruleKey = RuleKey.of("squid", "S00100");
+    sensorContext.setActiveRules(new ActiveRulesBuilder().create(ruleKey).activate().build());
+    sensorContext.settings().setProperty(IssuesReportPlugin.RULES_WARM_UP_KEY, true);
+
+    // when
+    inputFilesCollector.execute(sensorContext);
+
+    // then
+    verify(ruleProvider).startWarmUp(Arrays.asList(ruleKey));
+  }
+
 }
@@ -20,6 +20,7 @@
 package org.sonar.issuesreport.printer.html;
 
 import com.google.common.base.Charsets;
+import com.google.common.io.Files;
 
 import org.junit.Before;
 import org.junit.Rule;
@@ -31,19 +32,23 @@ import org.sonar.api.rule.RuleKey;
 import org.sonar.issuesreport.IssuesReportFakeUtils;
 import org.sonar.issuesreport.IssuesReportPlugin;
 import org.sonar.issuesreport.fs.ResourceNode;
+import org.sonar.issuesreport.provider.RuleDescriptor;
 import org.sonar.issuesreport.provider.RuleNameProvider;
 import org.sonar.issuesreport.provider.SourceProvider;
 import org.sonar.issuesreport.report.IssuesReport;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.function.BiConsumer;
 
 import static org.fest.assertions.Assertions.assertThat;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyBoolean;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.verify;
@@ -57,15 +62,19 @@ public class HTMLPrinterTest {
   private HtmlPrinter htmlPrinter;
   private RuleNameProvider ruleNameProvider;
   private FileSystem fs;
+  private TemplateEngine templateEngine;
+  private SourceProvider sourceProvider;
 
   @Before
   public void prepare() {
     ruleNameProvider = mock(RuleNameProvider.class);
-    SourceProvider sourceProvider = mock(SourceProvider.class);
+    sourceProvider = spy(new SourceProvider());
     fs = mock(FileSystem.class);
     settings = new MapSettings();
 
-    htmlPrinter = new HtmlPrinter(ruleNameProvider, sourceProvider, fs, settings.asConfig());
+    templateEngine = new TemplateEngine();
+
+    htmlPrinter = new HtmlPrinter(ruleNameProvider, sourceProvider, templateEngine, fs, settings.asConfig());
   }
 
   @Test
@@ -173,10 +182,94 @@ public class HTMLPrinterTest {
     assertThat(lightReportFile).exists();
   }
 
+  @Test
+  public void shouldReuseHtmlOfUnchangedFiles() throws IOException {
+    File reportDir = temp.newFolder();
+    File workDir = temp.newFolder();
+    File reportFile = new File(reportDir, "issues-report.html");
+    settings.setProperty(IssuesReportPlugin.HTML_REPORT_LOCATION_KEY, reportDir.getAbsolutePath());
+    settings.setProperty(IssuesReportPlugin.HTML_REPORT_NAME_KEY, IssuesReportPlugin.HTML_REPORT_NAME_DEFAULT);
+    settings.setProperty(IssuesReportPlugin.HTML_FRAGMENT_CACHE_KEY, true);
+
+    when(fs.encoding()).thenReturn(Charsets.UTF_8);
+    when(fs.workDir()).thenReturn(workDir);
+
+    ResourceNode file = IssuesReportFakeUtils.fakeFile("com.foo.Bar");
+    mockRuleNameProvider();
+
+    IssuesReport report = IssuesReportFakeUtils.sampleReportWith2IssuesPerFile(file);
+
+    htmlPrinter.print(report);
+    // One fragment for the complete report, one for the light one
+    File[] fragments = new File(workDir, HtmlFragmentCache.DIRNAME).listFiles();
+    assertThat(fragments).hasSize(2);
+    for (File fragment : fragments) {
+      Files.write("<p>cached fragment</p>", fragment, Charsets.UTF_8);
+    }
+
+    htmlPrinter.print(report);
+    assertThat(Files.toString(reportFile, Charsets.UTF_8)).contains("<p>cached fragment</p>");
+  }
+
+  @Test
+  public void shouldReuseHtmlOfFilesMovedInReport() throws IOException {
+    File reportDir = temp.newFolder();
+    File workDir = temp.newFolder();
+    File reportFile = new File(reportDir, "issues-report.html");
+    settings.setProperty(IssuesReportPlugin.HTML_REPORT_LOCATION_KEY, reportDir.getAbsolutePath());
+    settings.setProperty(IssuesReportPlugin.HTML_REPORT_NAME_KEY, IssuesReportPlugin.HTML_REPORT_NAME_DEFAULT);
+    settings.setProperty(IssuesReportPlugin.HTML_FRAGMENT_CACHE_KEY, true);
+
+    when(fs.encoding()).thenReturn(Charsets.UTF_8);
+    when(fs.workDir()).thenReturn(workDir);
+
+    ResourceNode file1 = IssuesReportFakeUtils.fakeFile("com.foo.Bar");
+    ResourceNode file2 = IssuesReportFakeUtils.fakeFile("com.foo.Foo");
+    mockRuleNameProvider();
+
+    htmlPrinter.print(IssuesReportFakeUtils.sampleReportWith2IssuesPerFile(file2));
+    String firstReport = Files.toString(reportFile, Charsets.UTF_8);
+    assertThat(firstReport).contains("id=\"resource-0\"").excludes(HtmlFragmentCache.INDEX_MARKER);
+    for (File fragment : new File(workDir, HtmlFragmentCache.DIRNAME).listFiles()) {
+      Files.write("<p id=\"cached-" + HtmlFragmentCache.INDEX_MARKER + "\"></p>", fragment, Charsets.UTF_8);
+    }
+
+    // Adding a file before it shifts the index of com.foo.Foo
+    htmlPrinter.print(IssuesReportFakeUtils.sampleReportWith2IssuesPerFile(file1, file2));
+    String secondReport = Files.toString(reportFile, Charsets.UTF_8);
+    assertThat(secondReport).contains("<p id=\"cached-1\"></p>").contains("id=\"resource-0\"");
+  }
+
+  @Test
+  public void shouldPrefetchSourcesOfEachReport() throws IOException {
+    File reportDir = temp.newFolder();
+    settings.setProperty(IssuesReportPlugin.HTML_REPORT_LOCATION_KEY, reportDir.getAbsolutePath());
+    settings.setProperty(IssuesReportPlugin.HTML_REPORT_NAME_KEY, IssuesReportPlugin.HTML_REPORT_NAME_DEFAULT);
+    settings.setProperty(IssuesReportPlugin.HTML_PREFETCH_THREADS_KEY, 2);
+
+    when(fs.encoding()).thenReturn(Charsets.UTF_8);
+
+    ResourceNode file1 = IssuesReportFakeUtils.fakeFile("com.foo.Bar");
+    ResourceNode file2 = IssuesReportFakeUtils.fakeFile("com.foo.Foo");
+    mockRuleNameProvider();
+
+    IssuesReport sample = IssuesReportFakeUtils.sampleReportWith2IssuesPerFile(file1);
+    // No new issue on com.foo.Foo, the light report does not display it
+    sample.addIssueOnResource(file2, IssuesReportFakeUtils.fakeIssue(false, RuleKey.of("foo", "bar2"), file2.getKey(), 6),
+      IssuesReportFakeUtils.fakeRule(RuleKey.of("foo", "bar2")));
+    IssuesReport report = spy(sample);
+    doReturn(true).when(report).isFrozen();
+
+    htmlPrinter.print(report);
+
+    verify(sourceProvider).startPrefetch(eq(Arrays.asList(file1, file2)), eq(2), any(BiConsumer.class));
+    verify(sourceProvider).startPrefetch(eq(Arrays.asList(file1)), eq(2), any(BiConsumer.class));
+  }
+
   private void mockRuleNameProvider() {
     when(ruleNameProvider.nameForHTML(eq(RuleKey.of("foo", "bar")))).thenReturn("My Rule 1");
     when(ruleNameProvider.nameForHTML(eq(RuleKey.of("foo", "bar2")))).thenReturn("My Rule 2");
-    when(ruleNameProvider.nameForHTML(any(org.sonar.api.rules.Rule.class))).thenReturn("My Rule");
+    when(ruleNameProvider.nameForHTML(any(RuleDescriptor.class))).thenReturn("My Rule");
     when(ruleNameProvider.nameForJS("foo:bar")).thenReturn("My Rule 2");
     when(ruleNameProvider.nameForJS("foo:bar2")).thenReturn("My Rule 2");
   }
@@ -0,0 +1,80 @@
+/*
+ * Sonar :: Issues Report :: Plugin
+ * Copyright (C) 2013 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.issuesreport.printer.html;
+
+import com.google.common.base.Charsets;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringEscapeUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.issuesreport.fs.ResourceNode;
+import org.sonar.issuesreport.provider.SourceLines;
+import org.sonar.issuesreport.provider.SourceProvider;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class HtmlEscapeDirectiveTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void shouldEscapeLikeStringEscapeUtils() throws IOException {
+    String[] values = {"", "plain text", "if (a < b && c > d) { s = \"x\"; }", "caf\u00e9 \u20ac", "emoji \ud83d\ude00 <",
+      "'quote'", "\u00a0\u00ff\u0100"};
+    for (String value : values) {
+      StringWriter out = new StringWriter();
+      HtmlEscapeDirective.escape(value, out);
+      assertThat(out.toString()).isEqualTo(StringEscapeUtils.escapeHtml(value));
+    }
+  }
+
+  // SONARPLUGINS-2710
+  @Test
+  public void shouldEscapeHtmlInSourceCode() throws Exception {
+    SourceProvider sourceProvider = new SourceProvider();
+    ResourceNode resource = mock(ResourceNode.class);
+
+    File fakeFile = temp.newFile();
+    FileUtils.write(fakeFile, "some\n&nbsp; <p> html", Charsets.UTF_8);
+
+    when(resource.getPath()).thenReturn(fakeFile);
+    when(resource.getEncoding()).thenReturn(Charsets.UTF_8);
+
+    SourceLines source = sourceProvider.getSource(resource);
+    List<String> escaped = new ArrayList<>();
+    for (int line = 1; line <= source.getLineCount(); line++) {
+      StringWriter out = new StringWriter();
+      HtmlEscapeDirective.escape(source.getLine(line), out);
+      escaped.add(out.toString());
+    }
+    assertThat(escaped).containsExactly("some", "&amp;nbsp; &lt;p&gt; html");
+  }
+
+}
@@ -0,0 +1,43 @@
+/*
+ * Sonar :: Issues Report :: Plugin
+ * Copyright (C) 2013 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.issuesreport.printer.html;
+
+import freemarker.template.Template;
+import org.junit.Test;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class TemplateEngineTest {
+
+  @Test
+  public void shouldParseTemplateOnlyOnce() throws Exception {
+    TemplateEngine engine = new TemplateEngine();
+    assertThat(engine.getCachedLoads()).isEqualTo(0);
+
+    Template template = engine.getTemplate();
+    assertThat(template).isNotNull();
+    assertThat(engine.getTemplate()).isSameAs(template);
+    assertThat(engine.getTemplate()).isSameAs(template);
+
+    assertThat(engine.getCachedLoads()).isEqualTo(2);
+    assertThat(engine.toString()).contains("2 times from cache");
+  }
+
+}
@@ -0,0 +1,108 @@
+/*
+ * Sonar :: Issues Report :: Plugin
+ * Copyright (C) 2013 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.issuesreport.provider;
+
+import com.google.common.base.Strings;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.api.rule.RuleKey;
+import org.sonarqube.ws.Common;
+import org.sonarqube.ws.Rules;
+import org.sonarqube.ws.client.WsClient;
+import org.sonarqube.ws.client.WsConnector;
+import org.sonarqube.ws.client.WsRequest;
+import org.sonarqube.ws.client.WsResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class RuleCatalogExporterTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void should_export_catalog_readable_by_rule_provider() throws IOException {
+    Rules.SearchResponse searchResponse = Rules.SearchResponse.newBuilder()
+        .addRules(Rules.Rule.newBuilder().setKey("foo:bar").setRepo("foo").setName("Rule 1").build())
+        .addRules(Rules.Rule.newBuilder().setKey("foo:bar2").setRepo("foo").setName("Rule\t2").build())
+        .build();
+    WsResponse response = mock(WsResponse.class);
+    when(response.failIfNotSuccessful()).thenReturn(response);
+    when(response.contentStream()).thenReturn(new ByteArrayInputStream(searchResponse.toByteArray()));
+    WsConnector wsConnector = mock(WsConnector.class);
+    when(wsConnector.call(any(WsRequest.class))).thenReturn(response);
+    WsClient wsClient = mock(WsClient.class);
+    when(wsClient.wsConnector()).thenReturn(wsConnector);
+
+    StringWriter writer = new StringWriter();
+    assertThat(new RuleCatalogExporter(wsClient).export(writer)).isEqualTo(2);
+
+    File catalog = temp.newFile();
+    FileUtils.write(catalog, writer.toString(), StandardCharsets.UTF_8);
+    Map<RuleKey, String> names = new HashMap<>();
+    assertThat(RuleCatalog.read(catalog, names::put)).isEqualTo(2);
+    assertThat(names.get(RuleKey.of("foo", "bar"))).isEqualTo("Rule 1");
+    assertThat(names.get(RuleKey.of("foo", "bar2"))).isEqualTo("Rule 2");
+  }
+
+  @Test
+  public void should_export_repository_by_repository_beyond_search_window() throws IOException {
+    Common.Facets facets = Common.Facets.newBuilder()
+        .addFacets(Common.Facet.newBuilder().setProperty("repositories")
+                     .addValues(Common.FacetValue.newBuilder().setVal("foo").setCount(1))
+                     .addValues(Common.FacetValue.newBuilder().setVal("qux").setCount(1)))
+        .build();
+    Map<String, Rules.SearchResponse> responses = new HashMap<>();
+    responses.put("", Rules.SearchResponse.newBuilder().setTotal(RuleCatalogExporter.SEARCH_WINDOW + 1).setFacets(facets).build());
+    responses.put("foo", Rules.SearchResponse.newBuilder()
+        .addRules(Rules.Rule.newBuilder().setKey("foo:bar").setRepo("foo").setName("Rule 1").build()).setTotal(1).build());
+    responses.put("qux", Rules.SearchResponse.newBuilder()
+        .addRules(Rules.Rule.newBuilder().setKey("qux:bar").setRepo("qux").setName("Rule 2").build()).setTotal(1).build());
+    WsConnector wsConnector = mock(WsConnector.class);
+    when(wsConnector.call(any(WsRequest.class))).thenAnswer(invocation -> {
+      WsRequest request = (WsRequest) invocation.getArguments()[0];
+      WsResponse response = mock(WsResponse.class);
+      when(response.failIfNotSuccessful()).thenReturn(response);
+      when(response.contentStream()).thenReturn(new ByteArrayInputStream(
+        responses.get(Strings.nullToEmpty(request.getParams().get("repositories"))).toByteArray()));
+      return response;
+    });
+    WsClient wsClient = mock(WsClient.class);
+    when(wsClient.wsConnector()).thenReturn(wsConnector);
+
+    StringWriter writer = new StringWriter();
+    assertThat(new RuleCatalogExporter(wsClient).export(writer)).isEqualTo(2);
+    assertThat(writer.toString()).contains("foo:bar\tRule 1\n").contains("qux:bar\tRule 2\n");
+  }
+}
@@ -22,10 +22,11 @@ package org.sonar.issuesreport.provider;
 import org.junit.Before;
 import org.junit.Test;
 import org.sonar.api.rule.RuleKey;
-import org.sonar.api.rules.Rule;
 
 import static org.fest.assertions.Assertions.assertThat;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class RuleNameProviderTest {
@@ -45,9 +46,8 @@ public class RuleNameProviderTest {
     when(ruleProvider.getRule(RuleKey.of("checkstyle", "com.puppycrawl.tools.checkstyle.checks.annotation.AnnotationUseStyleCheck"))).thenReturn(null);
 
     String ruleName = "RULE_NAME";
-    Rule
-        rule = Rule
-        .create("checkstyle", "com.puppycrawl.tools.checkstyle.checks.annotation.AnnotationUseStyleCheck", ruleName);
+    RuleDescriptor
+        rule = new RuleDescriptor(0, RuleKey.of("checkstyle", "com.puppycrawl.tools.checkstyle.checks.annotation.AnnotationUseStyleCheck"), ruleName);
 
     assertThat(nameProvider.nameForHTML(rule)).isEqualTo(ruleName);
     assertThat(nameProvider.nameForHTML(RuleKey.of("checkstyle", "com.puppycrawl.tools.checkstyle.checks.annotation.AnnotationUseStyleCheck"))).isEqualTo(
@@ -60,7 +60,7 @@ public class RuleNameProviderTest {
     when(ruleProvider
              .getRule(RuleKey.of("checkstyle", "com.puppycrawl.tools.checkstyle.checks.annotation.AnnotationUseStyleCheck"))).thenReturn(
 
-        Rule.create("checkstyle", "com.puppycrawl.tools.checkstyle.checks.annotation.AnnotationUseStyleCheck", dbName));
+        new RuleDescriptor(0, RuleKey.of("checkstyle", "com.puppycrawl.tools.checkstyle.checks.annotation.AnnotationUseStyleCheck"), dbName));
 
     assertThat(nameProvider.nameForHTML(rule)).isEqualTo(dbName);
     assertThat(nameProvider.nameForHTML(RuleKey.of("checkstyle", "com.puppycrawl.tools.checkstyle.checks.annotation.AnnotationUseStyleCheck"))).isEqualTo(dbName);
@@ -71,11 +71,11 @@ public class RuleNameProviderTest {
   @Test
   public void should_escape_name() {
 
-    Rule rule = Rule.create("checkstyle", "com.puppycrawl.tools.checkstyle.checks.annotation.AnnotationUseStyleCheck");
+    RuleDescriptor rule = new RuleDescriptor(0, RuleKey.of("checkstyle", "com.puppycrawl.tools.checkstyle.checks.annotation.AnnotationUseStyleCheck"), null);
 
     when(ruleProvider
              .getRule(RuleKey.of("checkstyle", "com.puppycrawl.tools.checkstyle.checks.annotation.AnnotationUseStyleCheck"))).thenReturn(
-      Rule.create("checkstyle", "com.puppycrawl.tools.checkstyle.checks.annotation.AnnotationUseStyleCheck", "Annotation 'Use' Style & co"));
+      new RuleDescriptor(0, RuleKey.of("checkstyle", "com.puppycrawl.tools.checkstyle.checks.annotation.AnnotationUseStyleCheck"), "Annotation 'Use' Style & co"));
 
     assertThat(nameProvider.nameForHTML(rule)).isEqualTo("Annotation 'Use' Style &amp; co");
     assertThat(nameProvider.nameForHTML(RuleKey.of("checkstyle", "com.puppycrawl.tools.checkstyle.checks.annotation.AnnotationUseStyleCheck"))).isEqualTo(
@@ -85,4 +85,31 @@ public class RuleNameProviderTest {
 
   }
 
+  @Test
+  public void should_cache_escaped_names_per_rule() {
+    RuleKey ruleKey = RuleKey.of("squid", "S00100");
+    when(ruleProvider.getRule(ruleKey)).thenReturn(new RuleDescriptor(0, ruleKey, "Methods & functions"));
+
+    for (int i = 0; i < 3; i++) {
+      assertThat(nameProvider.nameForHTML(ruleKey)).isEqualTo("Methods &amp; functions");
+      assertThat(nameProvider.nameForJS("squid:S00100")).isEqualTo("Methods & functions");
+    }
+    assertThat(nameProvider.nameForHTML(ruleKey)).isSameAs(nameProvider.nameForHTML(ruleKey));
+    verify(ruleProvider, times(2)).getRule(ruleKey);
+  }
+
+  @Test
+  public void should_not_cache_placeholder_names() {
+    RuleKey ruleKey = RuleKey.of("squid", "S00100");
+    when(ruleProvider.getRule(ruleKey)).thenReturn(new RuleDescriptor(0, ruleKey, "squid:S00100", true));
+
+    assertThat(nameProvider.nameForHTML(ruleKey)).isEqualTo("squid:S00100");
+    assertThat(nameProvider.nameForJS("squid:S00100")).isEqualTo("squid:S00100");
+
+    when(ruleProvider.getRule(ruleKey)).thenReturn(new RuleDescriptor(0, ruleKey, "Methods & functions"));
+
+    assertThat(nameProvider.nameForHTML(ruleKey)).isEqualTo("Methods &amp; functions");
+    assertThat(nameProvider.nameForJS("squid:S00100")).isEqualTo("Methods & functions");
+  }
+
 }
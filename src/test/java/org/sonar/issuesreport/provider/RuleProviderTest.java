@@ -0,0 +1,356 @@
+/*
+ * Sonar :: Issues Report :: Plugin
+ * Copyright (C) 2013 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.issuesreport.provider;
+
+import com.google.common.base.Strings;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.api.config.internal.MapSettings;
+import org.sonar.api.rule.RuleKey;
+import org.sonar.issuesreport.IssuesReportPlugin;
+import org.sonarqube.ws.Rules;
+import org.sonarqube.ws.client.WsClient;
+import org.sonarqube.ws.client.WsConnector;
+import org.sonarqube.ws.client.WsRequest;
+import org.sonarqube.ws.client.WsResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class RuleProviderTest {
+
+  private static final RuleKey RULE_1 = RuleKey.of("foo", "bar");
+  private static final RuleKey RULE_2 = RuleKey.of("foo", "bar2");
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  private MapSettings settings;
+  private WsClient wsClient;
+  private WsConnector wsConnector;
+  private RuleProvider ruleProvider;
+  private File workDir;
+
+  @Before
+  public void prepare() throws IOException {
+    workDir = temp.newFolder();
+    wsConnector = mock(WsConnector.class);
+    when(wsConnector.baseUrl()).thenReturn("http://localhost:9000/");
+    wsClient = mock(WsClient.class);
+    when(wsClient.wsConnector()).thenReturn(wsConnector);
+    settings = new MapSettings();
+    ruleProvider = new RuleProvider(wsClient, settings.asConfig(), workDir);
+  }
+
+  @Test
+  public void should_load_rules_in_bulk() {
+    Rules.SearchResponse searchResponse = Rules.SearchResponse.newBuilder()
+        .addRules(rule(RULE_1, "Rule 1"))
+        .addRules(rule(RULE_2, "Rule 2"))
+        .build();
+    WsResponse response = response(200, searchResponse.toByteArray());
+    when(wsConnector.call(any(WsRequest.class))).thenReturn(response);
+
+    ruleProvider.loadRules(Arrays.asList(RULE_1, RULE_2, RULE_1));
+
+    assertThat(ruleProvider.getRule(RULE_1).getName()).isEqualTo("Rule 1");
+    assertThat(ruleProvider.getRule(RULE_2).getName()).isEqualTo("Rule 2");
+    verify(wsConnector, times(1)).call(any(WsRequest.class));
+  }
+
+  @Test
+  public void should_fall_back_to_show_when_bulk_loading_fails() {
+    Rules.ShowResponse showResponse = Rules.ShowResponse.newBuilder().setRule(rule(RULE_1, "Rule 1")).build();
+    WsResponse searchFailure = response(400, new byte[0]);
+    WsResponse show = response(200, showResponse.toByteArray());
+    when(wsConnector.call(any(WsRequest.class))).thenReturn(searchFailure, show);
+
+    ruleProvider.loadRules(Arrays.asList(RULE_1));
+
+    assertThat(ruleProvider.getRule(RULE_1).getName()).isEqualTo("Rule 1");
+    verify(wsConnector, times(2)).call(any(WsRequest.class));
+  }
+
+  @Test
+  public void should_fetch_rules_missing_from_search_concurrently() {
+    settings.setProperty(IssuesReportPlugin.RULES_FETCH_THREADS_KEY, 2);
+    ruleProvider = new RuleProvider(wsClient, settings.asConfig(), workDir);
+    Map<String, WsResponse> responses = new HashMap<>();
+    responses.put("", response(200, Rules.SearchResponse.newBuilder().build().toByteArray()));
+    for (RuleKey ruleKey : Arrays.asList(RULE_1, RULE_2)) {
+      responses.put(ruleKey.toString(),
+                    response(200, Rules.ShowResponse.newBuilder().setRule(rule(ruleKey, ruleKey.rule())).build().toByteArray()));
+    }
+    when(wsConnector.call(any(WsRequest.class))).thenAnswer(invocation -> {
+      WsRequest request = (WsRequest) invocation.getArguments()[0];
+      return responses.get(Strings.nullToEmpty(request.getParams().get("key")));
+    });
+
+    ruleProvider.loadRules(Arrays.asList(RULE_1, RULE_2));
+    verify(wsConnector, times(3)).call(any(WsRequest.class));
+
+    assertThat(ruleProvider.getRule(RULE_1).getName()).isEqualTo("bar");
+    assertThat(ruleProvider.getRule(RULE_2).getName()).isEqualTo("bar2");
+    verify(wsConnector, times(3)).call(any(WsRequest.class));
+  }
+
+  @Test
+  public void should_bound_concurrent_fetches_by_a_single_timeout() throws InterruptedException {
+    settings.setProperty(IssuesReportPlugin.RULES_FETCH_THREADS_KEY, 8);
+    settings.setProperty(IssuesReportPlugin.RULES_FETCH_TIMEOUT_KEY, 500);
+    ruleProvider = new RuleProvider(wsClient, settings.asConfig(), workDir);
+    List<RuleKey> ruleKeys = new ArrayList<>();
+    for (int i = 0; i < 8; i++) {
+      ruleKeys.add(RuleKey.of("foo", "hung" + i));
+    }
+    WsResponse search = response(200, Rules.SearchResponse.newBuilder().build().toByteArray());
+    CountDownLatch hung = new CountDownLatch(1);
+    when(wsConnector.call(any(WsRequest.class))).thenAnswer(invocation -> {
+      WsRequest request = (WsRequest) invocation.getArguments()[0];
+      if (request.getParams().containsKey("key")) {
+        hung.await();
+      }
+      return search;
+    });
+
+    try {
+      long start = System.currentTimeMillis();
+      ruleProvider.loadRules(ruleKeys);
+      // Waiting for each fetch in turn would take 8 times the timeout
+      assertThat(System.currentTimeMillis() - start).isLessThan(2000);
+    } finally {
+      hung.countDown();
+    }
+
+    assertThat(ruleProvider.getRule(ruleKeys.get(0)).getName()).isEqualTo("foo:hung0");
+    assertThat(ruleProvider.getStats().getFailures()).isGreaterThanOrEqualTo(8);
+    verify(wsConnector, times(9)).call(any(WsRequest.class));
+  }
+
+  @Test
+  public void should_use_placeholder_and_not_ask_again_for_rule_that_failed() {
+    WsResponse notFound = response(404, new byte[0]);
+    when(wsConnector.call(any(WsRequest.class))).thenReturn(notFound);
+
+    assertThat(ruleProvider.getRule(RULE_1).getName()).isEqualTo("foo:bar");
+    assertThat(ruleProvider.getRule(RULE_1).getName()).isEqualTo("foo:bar");
+    assertThat(ruleProvider.getRule(RULE_1).isPlaceholder()).isTrue();
+    ruleProvider.loadRules(Arrays.asList(RULE_1));
+
+    verify(wsConnector, times(1)).call(any(WsRequest.class));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void should_fail_on_rule_that_failed_when_fail_soft_is_disabled() {
+    settings.setProperty(IssuesReportPlugin.RULES_FAIL_SOFT_KEY, false);
+    ruleProvider = new RuleProvider(wsClient, settings.asConfig(), workDir);
+    WsResponse notFound = response(404, new byte[0]);
+    when(wsConnector.call(any(WsRequest.class))).thenReturn(notFound);
+
+    ruleProvider.getRule(RULE_1);
+  }
+
+  @Test
+  public void should_resolve_rules_from_catalog_without_server() throws IOException {
+    File catalog = temp.newFile();
+    FileUtils.write(catalog, RuleCatalog.HEADER + "\nfoo:bar\tRule 1\n", StandardCharsets.UTF_8);
+    settings.setProperty(IssuesReportPlugin.RULES_CATALOG_KEY, catalog.getAbsolutePath());
+    ruleProvider = new RuleProvider(wsClient, settings.asConfig(), workDir);
+
+    ruleProvider.loadRules(Arrays.asList(RULE_1));
+
+    assertThat(ruleProvider.getRule(RULE_1).getName()).isEqualTo("Rule 1");
+    verify(wsConnector, never()).call(any(WsRequest.class));
+  }
+
+  @Test
+  public void should_give_ids_only_to_requested_rules() throws IOException {
+    File catalog = temp.newFile();
+    FileUtils.write(catalog, RuleCatalog.HEADER + "\nfoo:other\tOther\nfoo:bar\tRule 1\nfoo:bar2\tRule 2\n", StandardCharsets.UTF_8);
+    settings.setProperty(IssuesReportPlugin.RULES_CATALOG_KEY, catalog.getAbsolutePath());
+    ruleProvider = new RuleProvider(wsClient, settings.asConfig(), workDir);
+
+    assertThat(ruleProvider.getRule(RULE_2).getId()).isEqualTo(0);
+    assertThat(ruleProvider.getRule(RULE_1).getId()).isEqualTo(1);
+    assertThat(ruleProvider.getRule(RULE_2)).isSameAs(ruleProvider.getRule(RULE_2));
+  }
+
+  @Test
+  public void should_reuse_rules_persisted_by_previous_analysis() throws IOException {
+    File cacheDir = temp.newFolder();
+    settings.setProperty(IssuesReportPlugin.RULES_CACHE_DIR_KEY, cacheDir.getAbsolutePath());
+    Rules.SearchResponse searchResponse = Rules.SearchResponse.newBuilder().addRules(rule(RULE_1, "Rule 1")).build();
+    WsResponse response = response(200, searchResponse.toByteArray());
+    when(wsConnector.call(any(WsRequest.class))).thenReturn(response);
+
+    RuleProvider firstRun = new RuleProvider(wsClient, settings.asConfig(), workDir);
+    firstRun.loadDiskCache();
+    firstRun.loadRules(Arrays.asList(RULE_1));
+    firstRun.saveDiskCache();
+
+    RuleProvider secondRun = new RuleProvider(wsClient, settings.asConfig(), workDir);
+    secondRun.loadDiskCache();
+    secondRun.loadRules(Arrays.asList(RULE_1));
+
+    assertThat(secondRun.getRule(RULE_1).getName()).isEqualTo("Rule 1");
+    verify(wsConnector, times(1)).call(any(WsRequest.class));
+  }
+
+  @Test
+  public void should_not_persist_again_outdated_rules_removed_from_server() throws Exception {
+    File cacheDir = temp.newFolder();
+    settings.setProperty(IssuesReportPlugin.RULES_CACHE_DIR_KEY, cacheDir.getAbsolutePath());
+    RuleCacheFile cacheFile = new RuleCacheFile(cacheDir, "http://localhost:9000/");
+    cacheFile.write(Collections.singletonMap(RULE_1, new RuleCacheFile.Entry("Rule 1", 0L)));
+    WsResponse response = response(200, Rules.SearchResponse.newBuilder().build().toByteArray());
+    when(wsConnector.call(any(WsRequest.class))).thenReturn(response);
+
+    ruleProvider = new RuleProvider(wsClient, settings.asConfig(), workDir);
+    ruleProvider.loadDiskCache();
+    ruleProvider.loadRules(Arrays.asList(RULE_1));
+    ruleProvider.awaitRefresh();
+    ruleProvider.saveDiskCache();
+
+    assertThat(ruleProvider.getRule(RULE_1).getName()).isEqualTo("Rule 1");
+    assertThat(cacheFile.read()).isEmpty();
+    verify(wsConnector, times(1)).call(any(WsRequest.class));
+  }
+
+  @Test
+  public void should_use_outdated_rules_without_waiting_for_server() throws Exception {
+    File cacheDir = temp.newFolder();
+    settings.setProperty(IssuesReportPlugin.RULES_CACHE_DIR_KEY, cacheDir.getAbsolutePath());
+    new RuleCacheFile(cacheDir, "http://localhost:9000/")
+      .write(Collections.singletonMap(RULE_1, new RuleCacheFile.Entry("Rule 1", 0L)));
+    WsResponse response = response(200, Rules.SearchResponse.newBuilder().addRules(rule(RULE_1, "Rule 1 renamed")).build().toByteArray());
+    CountDownLatch hung = new CountDownLatch(1);
+    when(wsConnector.call(any(WsRequest.class))).thenAnswer(invocation -> {
+      hung.await();
+      return response;
+    });
+
+    ruleProvider = new RuleProvider(wsClient, settings.asConfig(), workDir);
+    ruleProvider.loadDiskCache();
+    ruleProvider.loadRules(Arrays.asList(RULE_1));
+    assertThat(ruleProvider.getRule(RULE_1).getName()).isEqualTo("Rule 1");
+
+    hung.countDown();
+    ruleProvider.awaitRefresh();
+    assertThat(ruleProvider.getRule(RULE_1).getName()).isEqualTo("Rule 1 renamed");
+  }
+
+  @Test
+  public void should_not_fetch_again_rules_loaded_by_warm_up() throws IOException {
+    Rules.SearchResponse searchResponse = Rules.SearchResponse.newBuilder()
+        .addRules(rule(RULE_1, "Rule 1"))
+        .addRules(rule(RULE_2, "Rule 2"))
+        .build();
+    WsResponse response = response(200, searchResponse.toByteArray());
+    when(wsConnector.call(any(WsRequest.class))).thenReturn(response);
+
+    ruleProvider.startWarmUp(Arrays.asList(RULE_1, RULE_2));
+    ruleProvider.startWarmUp(Arrays.asList(RULE_1, RULE_2));
+    ruleProvider.loadRules(Arrays.asList(RULE_1));
+
+    assertThat(ruleProvider.getRule(RULE_1).getName()).isEqualTo("Rule 1");
+    assertThat(ruleProvider.getRule(RULE_2).getName()).isEqualTo("Rule 2");
+    verify(wsConnector, times(1)).call(any(WsRequest.class));
+  }
+
+  @Test
+  public void should_warm_up_from_disk_cache_of_work_dir() throws IOException {
+    Rules.SearchResponse searchResponse = Rules.SearchResponse.newBuilder().addRules(rule(RULE_1, "Rule 1")).build();
+    WsResponse response = response(200, searchResponse.toByteArray());
+    when(wsConnector.call(any(WsRequest.class))).thenReturn(response);
+
+    RuleProvider firstRun = new RuleProvider(wsClient, settings.asConfig(), workDir);
+    firstRun.loadDiskCache();
+    firstRun.loadRules(Arrays.asList(RULE_1));
+    firstRun.saveDiskCache();
+
+    RuleProvider secondRun = new RuleProvider(wsClient, settings.asConfig(), workDir);
+    secondRun.startWarmUp(Arrays.asList(RULE_1));
+    secondRun.loadRules(Arrays.asList(RULE_1));
+
+    assertThat(secondRun.getRule(RULE_1).getName()).isEqualTo("Rule 1");
+    verify(wsConnector, times(1)).call(any(WsRequest.class));
+  }
+
+  @Test
+  public void should_record_fetch_stats() {
+    Rules.SearchResponse searchResponse = Rules.SearchResponse.newBuilder().addRules(rule(RULE_1, "Rule 1")).build();
+    Rules.ShowResponse showResponse = Rules.ShowResponse.newBuilder().setRule(rule(RULE_2, "Rule 2")).build();
+    WsResponse search = response(200, searchResponse.toByteArray());
+    WsResponse show = response(200, showResponse.toByteArray());
+    when(wsConnector.call(any(WsRequest.class))).thenReturn(search, show);
+
+    ruleProvider.loadRules(Arrays.asList(RULE_1, RULE_2));
+    ruleProvider.getRule(RULE_1);
+    ruleProvider.getRule(RULE_2);
+    ruleProvider.getRule(RULE_2);
+
+    RuleFetchStats stats = ruleProvider.getStats();
+    assertThat(stats.getHttpCalls()).isEqualTo(2);
+    assertThat(stats.getBytesReceived()).isEqualTo(searchResponse.toByteArray().length + showResponse.toByteArray().length);
+    assertThat(stats.getCacheHits()).isEqualTo(3);
+    assertThat(stats.getCacheMisses()).isEqualTo(0);
+    assertThat(stats.getShowCalls()).isEqualTo(1);
+    assertThat(stats.getFailures()).isEqualTo(0);
+    assertThat(stats.toString()).startsWith("Rules: 3 lookups, 100.0% cache hits, 2 HTTP calls");
+  }
+
+  @Test
+  public void should_not_report_hit_rate_without_lookups() {
+    assertThat(ruleProvider.getStats().toString()).startsWith("Rules: 0 lookups, n/a cache hits, 0 HTTP calls");
+  }
+
+  private static Rules.Rule rule(RuleKey ruleKey, String name) {
+    return Rules.Rule.newBuilder().setKey(ruleKey.toString()).setRepo(ruleKey.repository()).setName(name).build();
+  }
+
+  private static WsResponse response(int code, byte[] content) {
+    WsResponse response = mock(WsResponse.class);
+    when(response.code()).thenReturn(code);
+    when(response.content()).thenReturn("");
+    when(response.contentStream()).thenReturn(new ByteArrayInputStream(content));
+    return response;
+  }
+}
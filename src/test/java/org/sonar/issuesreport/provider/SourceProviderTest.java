@@ -24,9 +24,17 @@ import org.apache.commons.io.FileUtils;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
+import org.sonar.api.config.internal.MapSettings;
+import org.sonar.issuesreport.IssuesReportPlugin;
 import org.sonar.issuesreport.fs.ResourceNode;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static org.fest.assertions.Assertions.assertThat;
 import static org.mockito.Mockito.mock;
@@ -37,19 +45,133 @@ public class SourceProviderTest {
   @Rule
   public TemporaryFolder temp = new TemporaryFolder();
 
-  // SONARPLUGINS-2710
   @Test
-  public void shouldEscapeHtmlInSourceCode() throws Exception {
+  public void shouldReadRequestedLinesOnly() throws Exception {
     SourceProvider sourceProvider = new SourceProvider();
     ResourceNode resource = mock(ResourceNode.class);
 
     File fakeFile = temp.newFile();
-    FileUtils.write(fakeFile, "some\n&nbsp; <p> html", Charsets.UTF_8);
+    FileUtils.write(fakeFile, "first\r\nsecond <b>\rthird \u00e9\n\nfifth", Charsets.UTF_8);
 
     when(resource.getPath()).thenReturn(fakeFile);
     when(resource.getEncoding()).thenReturn(Charsets.UTF_8);
 
-    assertThat(sourceProvider.getEscapedSource(resource)).containsExactly("some", "&amp;nbsp; &lt;p&gt; html");
+    SourceLines source = sourceProvider.getSource(resource);
+    assertThat(source.getLineCount()).isEqualTo(5);
+    assertThat(source.getLine(2)).isEqualTo("second <b>");
+    assertThat(source.getLine(3)).isEqualTo("third \u00e9");
+    assertThat(source.getLine(4)).isEqualTo("");
+    assertThat(source.getLine(5)).isEqualTo("fifth");
+    List<String> lines = new ArrayList<>();
+    for (int line = 1; line <= source.getLineCount(); line++) {
+      lines.add(source.getLine(line));
+    }
+    assertThat(lines).isEqualTo(FileUtils.readLines(fakeFile, "UTF-8"));
+  }
+
+  @Test
+  public void shouldMapLargeFilesOnly() throws Exception {
+    File smallFile = temp.newFile();
+    FileUtils.write(smallFile, "some\nsource", Charsets.UTF_8);
+    SourceLines small = SourceLines.read(smallFile, Charsets.UTF_8);
+    assertThat(small.isMapped()).isFalse();
+    assertThat(small.getLine(2)).isEqualTo("source");
+
+    File largeFile = temp.newFile();
+    StringBuilder content = new StringBuilder();
+    int lineCount = 0;
+    while (content.length() < SourceLines.MAP_THRESHOLD) {
+      lineCount++;
+      content.append("line ").append(lineCount).append('\n');
+    }
+    FileUtils.write(largeFile, content, Charsets.UTF_8);
+    SourceLines large = SourceLines.read(largeFile, Charsets.UTF_8);
+    assertThat(large.isMapped()).isTrue();
+    assertThat(large.getLineCount()).isEqualTo(lineCount);
+    assertThat(large.getLine(lineCount)).isEqualTo("line " + lineCount);
+  }
+
+  @Test
+  public void shouldReadSourceInEncodingThatCannotBeMapped() throws Exception {
+    SourceProvider sourceProvider = new SourceProvider();
+    ResourceNode resource = mock(ResourceNode.class);
+
+    File fakeFile = temp.newFile();
+    FileUtils.write(fakeFile, "some\n<p>\n", Charsets.UTF_16);
+
+    when(resource.getPath()).thenReturn(fakeFile);
+    when(resource.getEncoding()).thenReturn(Charsets.UTF_16);
+
+    SourceLines source = sourceProvider.getSource(resource);
+    assertThat(source.getLineCount()).isEqualTo(2);
+    assertThat(source.getLine(2)).isEqualTo("<p>");
+  }
+
+  @Test
+  public void shouldShareSourcesUntilCacheIsCleared() throws Exception {
+    SourceProvider sourceProvider = new SourceProvider();
+    ResourceNode resource = mock(ResourceNode.class);
+
+    File fakeFile = temp.newFile();
+    FileUtils.write(fakeFile, "some\nsource", Charsets.UTF_8);
+
+    when(resource.getPath()).thenReturn(fakeFile);
+    when(resource.getEncoding()).thenReturn(Charsets.UTF_8);
+
+    SourceLines source = sourceProvider.getSource(resource);
+    assertThat(sourceProvider.getSource(resource)).isSameAs(source);
+
+    sourceProvider.clearCache();
+    assertThat(sourceProvider.getSource(resource)).isNotSameAs(source);
+  }
+
+  @Test
+  public void shouldNotKeepSourcesLargerThanCache() throws Exception {
+    MapSettings settings = new MapSettings();
+    settings.setProperty(IssuesReportPlugin.HTML_SOURCE_CACHE_SIZE_KEY, 0);
+    SourceProvider sourceProvider = new SourceProvider(settings.asConfig());
+    ResourceNode resource = mock(ResourceNode.class);
+
+    File fakeFile = temp.newFile();
+    FileUtils.write(fakeFile, "some\nsource", Charsets.UTF_8);
+
+    when(resource.getPath()).thenReturn(fakeFile);
+    when(resource.getEncoding()).thenReturn(Charsets.UTF_8);
+
+    SourceLines source = sourceProvider.getSource(resource);
+    assertThat(sourceProvider.getSource(resource)).isNotSameAs(source);
+  }
+
+  @Test
+  public void shouldHandOverPrefetchedSources() throws Exception {
+    SourceProvider sourceProvider = new SourceProvider();
+    List<ResourceNode> resources = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      ResourceNode resource = mock(ResourceNode.class);
+      File fakeFile = temp.newFile();
+      FileUtils.write(fakeFile, "source " + i, Charsets.UTF_8);
+      when(resource.getPath()).thenReturn(fakeFile);
+      when(resource.getEncoding()).thenReturn(Charsets.UTF_8);
+      resources.add(resource);
+    }
+    Map<ResourceNode, SourceLines> preloaded = new ConcurrentHashMap<>();
+    CountDownLatch latch = new CountDownLatch(3);
+
+    sourceProvider.startPrefetch(resources, 2, (resource, source) -> {
+      source.getLine(1);
+      preloaded.put(resource, source);
+      latch.countDown();
+    });
+    try {
+      assertThat(latch.await(10, TimeUnit.SECONDS)).isTrue();
+      for (int i = 0; i < 3; i++) {
+        SourceLines source = sourceProvider.getSource(resources.get(i));
+        assertThat(source).isSameAs(preloaded.get(resources.get(i)));
+        assertThat(source.getLine(1)).isEqualTo("source " + i);
+      }
+    } finally {
+      sourceProvider.stopPrefetch();
+    }
   }
 
   @Test
@@ -62,7 +184,7 @@ public class SourceProviderTest {
     when(resource.getPath()).thenReturn(fakeFolder);
     when(resource.getEncoding()).thenReturn(Charsets.UTF_8);
 
-    assertThat(sourceProvider.getEscapedSource(resource)).isEmpty();
+    assertThat(sourceProvider.getSource(resource).getLineCount()).isEqualTo(0);
   }
 
   @Test
@@ -73,7 +195,7 @@ public class SourceProviderTest {
     when(resource.getPath()).thenReturn(null);
     when(resource.getEncoding()).thenReturn(Charsets.UTF_8);
 
-    assertThat(sourceProvider.getEscapedSource(resource)).isEmpty();
+    assertThat(sourceProvider.getSource(resource).getLineCount()).isEqualTo(0);
   }
 
 }
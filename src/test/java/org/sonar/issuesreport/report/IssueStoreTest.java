@@ -0,0 +1,123 @@
+/*
+ * Sonar :: Issues Report :: Plugin
+ * Copyright (C) 2013 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.issuesreport.report;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.api.batch.postjob.issue.PostJobIssue;
+import org.sonar.api.batch.rule.Severity;
+import org.sonar.api.rule.RuleKey;
+import org.sonar.issuesreport.provider.RuleDescriptor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+import static org.sonar.issuesreport.IssuesReportFakeUtils.fakeIssue;
+import static org.sonar.issuesreport.IssuesReportFakeUtils.fakeRule;
+
+public class IssueStoreTest {
+
+  private static final RuleKey RULE_KEY = RuleKey.of("foo", "bar");
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void should_snapshot_issues() {
+    RuleDescriptor rule = fakeRule(RULE_KEY);
+    PostJobIssue issue = fakeIssue(true, RULE_KEY, "foo", 12);
+    when(issue.message()).thenReturn("Fix me");
+    when(issue.severity()).thenReturn(Severity.MINOR);
+    PostJobIssue noLine = fakeIssue(false, RULE_KEY, "foo", null);
+
+    IssueStore store = new IssueStore();
+    store.add(issue, rule);
+    store.add(noLine, rule);
+
+    assertThat(store.size()).isEqualTo(2);
+    ReportIssue first = store.all().get(0);
+    assertThat(first.key()).isEqualTo(issue.key());
+    assertThat(first.rule()).isSameAs(rule);
+    assertThat(first.ruleKey()).isEqualTo(RULE_KEY);
+    assertThat(first.line()).isEqualTo(12);
+    assertThat(first.severity()).isEqualTo(Severity.MINOR);
+    assertThat(first.isNew()).isTrue();
+    assertThat(first.message()).isEqualTo("Fix me");
+    ReportIssue second = store.all().get(1);
+    assertThat((Object) second.line()).isNull();
+    assertThat(second.severity()).isEqualTo(Severity.BLOCKER);
+    assertThat(second.isNew()).isFalse();
+    assertThat(second.message()).isNull();
+  }
+
+  @Test
+  public void should_accept_issues_after_compaction() {
+    RuleDescriptor rule = fakeRule(RULE_KEY);
+    IssueStore store = new IssueStore();
+    for (int i = 0; i < 5; i++) {
+      store.add(fakeIssue(false, RULE_KEY, "foo", i + 1), rule);
+    }
+    store.compact();
+    PostJobIssue last = fakeIssue(true, RULE_KEY, "foo", 42);
+    store.add(last, rule);
+
+    assertThat(store.size()).isEqualTo(6);
+    assertThat(store.all().get(5).key()).isEqualTo(last.key());
+    assertThat(store.all().get(5).line()).isEqualTo(42);
+    assertThat(store.all().get(4).line()).isEqualTo(5);
+  }
+
+  @Test
+  public void should_read_spilled_issues_back() throws Exception {
+    RuleDescriptor rule = fakeRule(RULE_KEY);
+    // More than two chunks
+    int count = IssueStore.CHUNK_SIZE * 2 + 1;
+    List<PostJobIssue> issues = new ArrayList<>();
+    try (IssueSpillFile spillFile = IssueSpillFile.create(temp.newFolder())) {
+      IssueStore store = new IssueStore(spillFile);
+      IssueStore other = new IssueStore(spillFile);
+      for (int i = 0; i < count; i++) {
+        PostJobIssue issue = fakeIssue(i % 2 == 0, RULE_KEY, "foo", i + 1);
+        when(issue.message()).thenReturn(i % 3 == 0 ? null : "Fix \u00e9 " + i);
+        issues.add(issue);
+        store.add(issue, rule);
+      }
+      PostJobIssue otherIssue = fakeIssue(false, RULE_KEY, "bar", 1);
+      other.add(otherIssue, rule);
+      store.compact();
+      other.compact();
+
+      assertThat(store.size()).isEqualTo(count);
+      for (int i = 0; i < count; i++) {
+        ReportIssue issue = store.all().get(i);
+        assertThat(issue.key()).isEqualTo(issues.get(i).key());
+        assertThat(issue.message()).isEqualTo(issues.get(i).message());
+        assertThat(issue.line()).isEqualTo(i + 1);
+        assertThat(issue.isNew()).isEqualTo(i % 2 == 0);
+      }
+      assertThat(other.all().get(0).key()).isEqualTo(otherIssue.key());
+      assertThat(store.all().get(0).key()).isEqualTo(issues.get(0).key());
+    }
+  }
+
+}
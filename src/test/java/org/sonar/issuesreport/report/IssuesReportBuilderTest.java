@@ -20,44 +20,59 @@
 package org.sonar.issuesreport.report;
 
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.sonar.api.CoreProperties;
+import org.sonar.api.batch.fs.FileSystem;
 import org.sonar.api.batch.postjob.PostJobContext;
 import org.sonar.api.batch.postjob.issue.PostJobIssue;
 import org.sonar.api.config.Configuration;
 import org.sonar.api.rule.RuleKey;
-import org.sonar.api.rules.Rule;
 import org.sonar.issuesreport.IssuesReportFakeUtils;
+import org.sonar.issuesreport.IssuesReportPlugin;
 import org.sonar.issuesreport.fs.InputFilesCollector;
 import org.sonar.issuesreport.fs.ResourceNode;
+import org.sonar.issuesreport.provider.RuleDescriptor;
 import org.sonar.issuesreport.provider.RuleProvider;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
 
 import static org.fest.assertions.Assertions.assertThat;
+import static org.junit.Assert.fail;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
 public class IssuesReportBuilderTest {
 
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
   private PostJobContext context;
   private RuleProvider ruleFinder;
   private IssuesReportBuilder builder;
   private InputFilesCollector inputFilesCollector;
+  private Configuration config;
 
   @Before
   public void prepare() {
-    Configuration config = mock(Configuration.class);
+    config = mock(Configuration.class);
     when(config.get(CoreProperties.PROJECT_NAME_PROPERTY)).thenReturn(Optional.of("Project Name"));
+    when(config.getInt(IssuesReportPlugin.BUILD_THREADS_KEY)).thenReturn(Optional.empty());
+    when(config.getInt(IssuesReportPlugin.SPILL_THRESHOLD_KEY)).thenReturn(Optional.empty());
 
     context = mock(PostJobContext.class);
     when(context.config()).thenReturn(config);
 
     ruleFinder = mock(RuleProvider.class);
     inputFilesCollector = mock(InputFilesCollector.class);
-    builder = new IssuesReportBuilder(ruleFinder, inputFilesCollector);
+    builder = new IssuesReportBuilder(ruleFinder, inputFilesCollector, mock(FileSystem.class));
   }
 
   @Test
@@ -95,7 +110,7 @@ public class IssuesReportBuilderTest {
     when(context.issues()).thenReturn(Collections.singletonList(fakeIssue));
     when(context.resolvedIssues()).thenReturn(Collections.emptyList());
 
-    Rule fakeRule = IssuesReportFakeUtils.fakeRule(ruleKey);
+    RuleDescriptor fakeRule = IssuesReportFakeUtils.fakeRule(ruleKey);
     when(ruleFinder.getRule(eq(ruleKey))).thenReturn(fakeRule);
 
     IssuesReport report = builder.buildReport(context);
@@ -134,7 +149,7 @@ public class IssuesReportBuilderTest {
     when(context.issues()).thenReturn(Collections.singletonList(fakeIssue));
     when(context.resolvedIssues()).thenReturn(Collections.emptyList());
 
-    Rule fakeRule = IssuesReportFakeUtils.fakeRule(ruleKey);
+    RuleDescriptor fakeRule = IssuesReportFakeUtils.fakeRule(ruleKey);
     when(ruleFinder.getRule(eq(ruleKey))).thenReturn(fakeRule);
 
     IssuesReport report = builder.buildReport(context);
@@ -171,7 +186,7 @@ public class IssuesReportBuilderTest {
     when(context.issues()).thenReturn(Collections.singletonList(fakeNewIssue));
     when(context.resolvedIssues()).thenReturn(Collections.singletonList(fakeResolvedIssue));
 
-    Rule fakeRule = IssuesReportFakeUtils.fakeRule(ruleKey);
+    RuleDescriptor fakeRule = IssuesReportFakeUtils.fakeRule(ruleKey);
     when(ruleFinder.getRule(eq(ruleKey))).thenReturn(fakeRule);
 
     IssuesReport report = builder.buildReport(context);
@@ -185,4 +200,155 @@ public class IssuesReportBuilderTest {
     assertThat(report.getResourceReports().get(0).getTotal().getResolvedIssuesCount()).isEqualTo(1);
   }
 
+  @Test
+  public void shouldBuildSameReportInParallel() {
+    List<ResourceNode> files = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      ResourceNode file = IssuesReportFakeUtils.fakeFile("project:File" + i);
+      when(inputFilesCollector.getResource("project:File" + i)).thenReturn(file);
+      files.add(file);
+    }
+    List<PostJobIssue> issues = new ArrayList<>();
+    List<PostJobIssue> resolvedIssues = new ArrayList<>();
+    for (int i = 0; i < 500; i++) {
+      RuleKey ruleKey = RuleKey.of("foo", "rule" + (i % 7));
+      when(ruleFinder.getRule(eq(ruleKey))).thenReturn(IssuesReportFakeUtils.fakeRule(ruleKey));
+      String componentKey = "project:File" + ((i * 7) % 19);
+      issues.add(IssuesReportFakeUtils.fakeIssue(i % 3 == 0, ruleKey, componentKey, i % 50));
+      if (i % 5 == 0) {
+        // File19 only has resolved issues
+        resolvedIssues.add(IssuesReportFakeUtils.fakeIssue(false, ruleKey, i % 2 == 0 ? componentKey : "project:File19", null));
+      }
+    }
+    when(context.issues()).thenReturn(issues);
+    when(context.resolvedIssues()).thenReturn(resolvedIssues);
+
+    IssuesReport sequential = builder.buildReport(context);
+    when(config.getInt(IssuesReportPlugin.BUILD_THREADS_KEY)).thenReturn(Optional.of(4));
+    IssuesReport parallel = builder.buildReport(context);
+
+    assertThat(parallel.getResourcesWithReport()).isEqualTo(sequential.getResourcesWithReport());
+    assertThat(parallel.getResourcesWithReport()).hasSize(20);
+    for (int i = 0; i < sequential.getResourceReports().size(); i++) {
+      ResourceReport expected = sequential.getResourceReports().get(i);
+      ResourceReport actual = parallel.getResourceReports().get(i);
+      assertThat(actual.getIssues()).isEqualTo(expected.getIssues());
+      assertSameTotal(actual.getTotal(), expected.getTotal());
+      assertSameRuleReports(actual.getRuleReports(), expected.getRuleReports());
+    }
+    ReportSummary expected = sequential.getSummary();
+    ReportSummary actual = parallel.getSummary();
+    assertSameTotal(actual.getTotal(), expected.getTotal());
+    assertThat(actual.getTotalBySeverity().keySet()).isEqualTo(expected.getTotalBySeverity().keySet());
+    expected.getTotalBySeverity().forEach((severity, total) -> assertSameTotal(actual.getTotalBySeverity().get(severity), total));
+    assertThat(actual.getTotalByRuleKey().keySet()).isEqualTo(expected.getTotalByRuleKey().keySet());
+    expected.getTotalByRuleKey().forEach((ruleKey, total) -> assertSameTotal(actual.getTotalByRuleKey().get(ruleKey), total));
+    assertSameRuleReports(actual.getRuleReports(), expected.getRuleReports());
+  }
+
+  private static void assertSameRuleReports(List<RuleReport> actual, List<RuleReport> expected) {
+    assertThat(actual).hasSize(expected.size());
+    for (int i = 0; i < expected.size(); i++) {
+      assertThat(actual.get(i).getReportRuleKey()).isEqualTo(expected.get(i).getReportRuleKey());
+      assertSameTotal(actual.get(i).getTotal(), expected.get(i).getTotal());
+    }
+  }
+
+  private static void assertSameTotal(IssueVariation actual, IssueVariation expected) {
+    assertThat(actual.getCountInCurrentAnalysis()).isEqualTo(expected.getCountInCurrentAnalysis());
+    assertThat(actual.getNewIssuesCount()).isEqualTo(expected.getNewIssuesCount());
+    assertThat(actual.getResolvedIssuesCount()).isEqualTo(expected.getResolvedIssuesCount());
+  }
+
+  @Test
+  public void shouldFreezeReport() {
+    IssuesReport report = buildSingleIssueReport();
+    assertThat(report.isFrozen()).isTrue();
+    assertThat(report.getResourceReports()).isSameAs(report.getResourceReports());
+    assertThat(report.getResourcesWithReport()).isSameAs(report.getResourcesWithReport());
+    assertThat(report.getSummary().getRuleReports()).isSameAs(report.getSummary().getRuleReports());
+    assertThat(report.getSummary().getTotalByRuleKey()).isSameAs(report.getSummary().getTotalByRuleKey());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void shouldNotAcceptIssuesOnceFrozen() {
+    IssuesReport report = buildSingleIssueReport();
+    ResourceReport resourceReport = report.getResourceReports().get(0);
+    RuleDescriptor rule = resourceReport.getIssues().get(0).rule();
+    resourceReport.addIssue(IssuesReportFakeUtils.fakeIssue(false, rule.ruleKey(), "project:com.foo.Bar", 5), rule);
+  }
+
+  private IssuesReport buildSingleIssueReport() {
+    ResourceNode fakeFile = IssuesReportFakeUtils.fakeFile("project:com.foo.Bar");
+    when(inputFilesCollector.getResource("project:com.foo.Bar")).thenReturn(fakeFile);
+
+    RuleKey ruleKey = RuleKey.of("foo", "bar");
+    PostJobIssue fakeIssue = IssuesReportFakeUtils.fakeIssue(false, ruleKey, "project:com.foo.Bar", 4);
+
+    when(context.issues()).thenReturn(Collections.singletonList(fakeIssue));
+    when(context.resolvedIssues()).thenReturn(Collections.emptyList());
+
+    RuleDescriptor fakeRule = IssuesReportFakeUtils.fakeRule(ruleKey);
+    when(ruleFinder.getRule(eq(ruleKey))).thenReturn(fakeRule);
+
+    return builder.buildReport(context);
+  }
+
+  @Test
+  public void shouldKeepIssueDetailsOnDiskAboveThreshold() throws Exception {
+    File workDir = temp.newFolder();
+    FileSystem fs = mock(FileSystem.class);
+    when(fs.workDir()).thenReturn(workDir);
+    builder = new IssuesReportBuilder(ruleFinder, inputFilesCollector, fs);
+    when(config.getInt(IssuesReportPlugin.SPILL_THRESHOLD_KEY)).thenReturn(Optional.of(1));
+
+    ResourceNode fakeFile = IssuesReportFakeUtils.fakeFile("project:com.foo.Bar");
+    when(inputFilesCollector.getResource("project:com.foo.Bar")).thenReturn(fakeFile);
+    RuleKey ruleKey = RuleKey.of("foo", "bar");
+    PostJobIssue issue1 = IssuesReportFakeUtils.fakeIssue(false, ruleKey, "project:com.foo.Bar", 4);
+    PostJobIssue issue2 = IssuesReportFakeUtils.fakeIssue(true, ruleKey, "project:com.foo.Bar", 8);
+    when(issue2.message()).thenReturn("Fix me");
+    when(context.issues()).thenReturn(Arrays.asList(issue1, issue2));
+    when(context.resolvedIssues()).thenReturn(Collections.emptyList());
+    when(ruleFinder.getRule(eq(ruleKey))).thenReturn(IssuesReportFakeUtils.fakeRule(ruleKey));
+
+    IssuesReport report = builder.buildReport(context);
+    assertThat(report.isSpilled()).isTrue();
+    File spillFile = new File(workDir, IssueSpillFile.FILENAME);
+    assertThat(spillFile).exists();
+    ResourceReport resourceReport = report.getResourceReports().get(0);
+    assertThat(resourceReport.getIssuesAtLine(8, true).get(0).key()).isEqualTo(issue2.key());
+    assertThat(resourceReport.getIssuesAtLine(8, true).get(0).message()).isEqualTo("Fix me");
+    assertThat(resourceReport.getIssuesAtLine(4, true).get(0).key()).isEqualTo(issue1.key());
+
+    report.close();
+    assertThat(spillFile).doesNotExist();
+  }
+
+  @Test
+  public void shouldDeleteSpillFileWhenBuildFails() throws Exception {
+    File workDir = temp.newFolder();
+    FileSystem fs = mock(FileSystem.class);
+    when(fs.workDir()).thenReturn(workDir);
+    builder = new IssuesReportBuilder(ruleFinder, inputFilesCollector, fs);
+    when(config.getInt(IssuesReportPlugin.SPILL_THRESHOLD_KEY)).thenReturn(Optional.of(1));
+
+    ResourceNode fakeFile = IssuesReportFakeUtils.fakeFile("project:com.foo.Bar");
+    when(inputFilesCollector.getResource("project:com.foo.Bar")).thenReturn(fakeFile);
+    RuleKey ruleKey = RuleKey.of("foo", "bar");
+    PostJobIssue issue1 = IssuesReportFakeUtils.fakeIssue(false, ruleKey, "project:com.foo.Bar", 4);
+    PostJobIssue issue2 = IssuesReportFakeUtils.fakeIssue(true, ruleKey, "project:com.foo.Bar", 8);
+    when(context.issues()).thenReturn(Arrays.asList(issue1, issue2));
+    when(context.resolvedIssues()).thenReturn(Collections.emptyList());
+    when(ruleFinder.getRule(eq(ruleKey))).thenThrow(new IllegalStateException("Failed to get rule"));
+
+    try {
+      builder.buildReport(context);
+      fail();
+    } catch (IllegalStateException e) {
+      // expected
+    }
+    assertThat(new File(workDir, IssueSpillFile.FILENAME)).doesNotExist();
+  }
+
 }
@@ -0,0 +1,110 @@
+/*
+ * Sonar :: Issues Report :: Plugin
+ * Copyright (C) 2013 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.issuesreport.report;
+
+import org.junit.Test;
+import org.sonar.api.batch.postjob.issue.PostJobIssue;
+import org.sonar.api.rule.RuleKey;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.sonar.issuesreport.IssuesReportFakeUtils.fakeIssue;
+import static org.sonar.issuesreport.IssuesReportFakeUtils.fakeRule;
+
+public class LineIndexTest {
+
+  private static final RuleKey RULE_KEY = RuleKey.of("foo", "bar");
+
+  @Test
+  public void should_group_issues_by_line_in_reported_order() {
+    PostJobIssue onLine5 = fakeIssue(false, RULE_KEY, "foo", 5);
+    PostJobIssue noLine = fakeIssue(true, RULE_KEY, "foo", null);
+    PostJobIssue newOnLine5 = fakeIssue(true, RULE_KEY, "foo", 5);
+    PostJobIssue onLine2 = fakeIssue(false, RULE_KEY, "foo", 2);
+    IssueStore issues = store(onLine5, noLine, newOnLine5, onLine2);
+
+    LineIndex all = LineIndex.of(issues, issue -> true);
+    assertThat(keys(all.issuesAt(0))).containsExactly(noLine.key());
+    assertThat(keys(all.issuesAt(2))).containsExactly(onLine2.key());
+    assertThat(keys(all.issuesAt(5))).containsExactly(onLine5.key(), newOnLine5.key());
+    assertThat(all.issuesAt(3)).isEmpty();
+
+    LineIndex newOnly = LineIndex.of(issues, issues::isNew);
+    assertThat(keys(newOnly.issuesAt(5))).containsExactly(newOnLine5.key());
+    assertThat(newOnly.issuesAt(2)).isEmpty();
+  }
+
+  @Test
+  public void should_find_issues_in_range() {
+    LineIndex index = LineIndex.of(store(fakeIssue(false, RULE_KEY, "foo", 10)), issue -> true);
+
+    assertThat(index.hasIssuesBetween(6, 9)).isFalse();
+    assertThat(index.hasIssuesBetween(8, 12)).isTrue();
+    assertThat(index.hasIssuesBetween(10, 10)).isTrue();
+    assertThat(index.hasIssuesBetween(11, 15)).isFalse();
+  }
+
+  @Test
+  public void should_merge_display_windows() {
+    IssueStore issues = store(
+      fakeIssue(false, RULE_KEY, "foo", 1),
+      fakeIssue(false, RULE_KEY, "foo", 10),
+      fakeIssue(false, RULE_KEY, "foo", 14),
+      fakeIssue(false, RULE_KEY, "foo", 20),
+      fakeIssue(false, RULE_KEY, "foo", 29));
+    LineIndex index = LineIndex.of(issues, issue -> true);
+
+    assertThat(index.windows(2, 30)).containsExactly(
+      new LineRange(1, 3), new LineRange(8, 16), new LineRange(18, 22), new LineRange(27, 30));
+    assertThat(index.windows(2, 12)).containsExactly(new LineRange(1, 3), new LineRange(8, 12));
+  }
+
+  @Test
+  public void should_display_first_lines_for_issues_without_line() {
+    LineIndex index = LineIndex.of(store(fakeIssue(false, RULE_KEY, "foo", null)), issue -> true);
+
+    assertThat(index.windows(2, 30)).containsExactly(new LineRange(1, 2));
+    assertThat(index.windows(2, 0)).isEmpty();
+  }
+
+  @Test
+  public void should_support_no_issue() {
+    IssueStore issues = store(fakeIssue(false, RULE_KEY, "foo", 10));
+    LineIndex index = LineIndex.of(issues, issues::isNew);
+
+    assertThat(index.issuesAt(10)).isEmpty();
+    assertThat(index.hasIssuesBetween(0, 100)).isFalse();
+  }
+
+  private static IssueStore store(PostJobIssue... issues) {
+    IssueStore store = new IssueStore();
+    for (PostJobIssue issue : issues) {
+      store.add(issue, fakeRule(issue.ruleKey()));
+    }
+    return store;
+  }
+
+  private static List<String> keys(List<ReportIssue> issues) {
+    return issues.stream().map(ReportIssue::key).collect(Collectors.toList());
+  }
+
+}
@@ -21,38 +21,40 @@ package org.sonar.issuesreport.report;
 
 import org.junit.Test;
 import org.sonar.api.batch.rule.Severity;
+import org.sonar.api.rule.RuleKey;
 
 import static org.fest.assertions.Assertions.assertThat;
+import static org.sonar.issuesreport.IssuesReportFakeUtils.fakeRule;
 
 public class ReportRuleKeyTest {
 
   @Test
   public void testEquals() {
-    ReportRuleKey reportRuleKey = new ReportRuleKey(org.sonar.api.rules.Rule.create("foo", "bar"), Severity.BLOCKER);
+    ReportRuleKey reportRuleKey = new ReportRuleKey(fakeRule(RuleKey.of("foo", "bar")), Severity.BLOCKER);
     assertThat(reportRuleKey).isNotEqualTo("another object");
     assertThat(reportRuleKey).isEqualTo(reportRuleKey);
-    assertThat(reportRuleKey).isEqualTo(new ReportRuleKey(org.sonar.api.rules.Rule.create("foo", "bar"), Severity.BLOCKER));
-    assertThat(reportRuleKey).isNotEqualTo(new ReportRuleKey(org.sonar.api.rules.Rule.create("foo", "bar"), Severity.MAJOR));
-    assertThat(reportRuleKey).isNotEqualTo(new ReportRuleKey(org.sonar.api.rules.Rule.create("foo", "bar2"), Severity.BLOCKER));
+    assertThat(reportRuleKey).isEqualTo(new ReportRuleKey(fakeRule(RuleKey.of("foo", "bar")), Severity.BLOCKER));
+    assertThat(reportRuleKey).isNotEqualTo(new ReportRuleKey(fakeRule(RuleKey.of("foo", "bar")), Severity.MAJOR));
+    assertThat(reportRuleKey).isNotEqualTo(new ReportRuleKey(fakeRule(RuleKey.of("foo", "bar2")), Severity.BLOCKER));
   }
 
   @Test
   public void testCompare() {
-    ReportRuleKey reportRuleKey = new ReportRuleKey(org.sonar.api.rules.Rule.create("foo", "bar"), Severity.MAJOR);
+    ReportRuleKey reportRuleKey = new ReportRuleKey(fakeRule(RuleKey.of("foo", "bar")), Severity.MAJOR);
 
-    ReportRuleKey other = new ReportRuleKey(org.sonar.api.rules.Rule.create("foo", "bar"), Severity.MAJOR);
+    ReportRuleKey other = new ReportRuleKey(fakeRule(RuleKey.of("foo", "bar")), Severity.MAJOR);
     assertThat(reportRuleKey.compareTo(other)).isEqualTo(0);
 
-    other = new ReportRuleKey(org.sonar.api.rules.Rule.create("foo", "bar"), Severity.MINOR);
+    other = new ReportRuleKey(fakeRule(RuleKey.of("foo", "bar")), Severity.MINOR);
     assertThat(reportRuleKey.compareTo(other)).isLessThan(0);
 
-    other = new ReportRuleKey(org.sonar.api.rules.Rule.create("foo", "bar"), Severity.BLOCKER);
+    other = new ReportRuleKey(fakeRule(RuleKey.of("foo", "bar")), Severity.BLOCKER);
     assertThat(reportRuleKey.compareTo(other)).isGreaterThan(0);
 
-    other = new ReportRuleKey(org.sonar.api.rules.Rule.create("foo", "baq"), Severity.MAJOR);
+    other = new ReportRuleKey(fakeRule(RuleKey.of("foo", "baq")), Severity.MAJOR);
     assertThat(reportRuleKey.compareTo(other)).isGreaterThan(0);
 
-    other = new ReportRuleKey(org.sonar.api.rules.Rule.create("foo", "bas"), Severity.MAJOR);
+    other = new ReportRuleKey(fakeRule(RuleKey.of("foo", "bas")), Severity.MAJOR);
     assertThat(reportRuleKey.compareTo(other)).isLessThan(0);
   }
 
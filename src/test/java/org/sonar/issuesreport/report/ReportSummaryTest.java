@@ -0,0 +1,84 @@
+/*
+ * Sonar :: Issues Report :: Plugin
+ * Copyright (C) 2013 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.issuesreport.report;
+
+import java.util.List;
+import org.junit.Test;
+import org.sonar.api.batch.rule.Severity;
+import org.sonar.api.rule.RuleKey;
+import org.sonar.issuesreport.provider.RuleDescriptor;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.sonar.issuesreport.IssuesReportFakeUtils.fakeIssue;
+
+public class ReportSummaryTest {
+
+  @Test
+  public void should_aggregate_by_severity_and_rule() {
+    RuleKey ruleKey1 = RuleKey.of("foo", "rule1");
+    RuleKey ruleKey2 = RuleKey.of("foo", "rule2");
+    RuleDescriptor rule1 = new RuleDescriptor(0, ruleKey1, null);
+    // Ids are not required to be contiguous
+    RuleDescriptor rule2 = new RuleDescriptor(1000, ruleKey2, null);
+    ReportSummary summary = new ReportSummary();
+
+    summary.addIssue(fakeIssue(true, ruleKey1, "foo", 1), rule1);
+    summary.addIssue(fakeIssue(false, ruleKey1, "foo", 2), rule1);
+    summary.addIssue(fakeIssue(false, ruleKey2, "foo", 3), rule2);
+    summary.addResolvedIssue(fakeIssue(false, ruleKey2, "foo", 4), rule2);
+
+    assertThat(summary.getTotal().getCountInCurrentAnalysis()).isEqualTo(3);
+    assertThat(summary.getTotal().getNewIssuesCount()).isEqualTo(1);
+    assertThat(summary.getTotal().getResolvedIssuesCount()).isEqualTo(1);
+
+    assertThat(summary.getTotal(Severity.BLOCKER).getCountInCurrentAnalysis()).isEqualTo(3);
+    assertThat(summary.getTotal(Severity.MINOR)).isNull();
+    assertThat(summary.getTotalBySeverity().keySet()).containsOnly("BLOCKER");
+
+    assertThat(summary.getTotalByRuleKey().keySet()).containsOnly("foo:rule1", "foo:rule2");
+    IssueVariation rule1Total = summary.getTotalByRuleKey().get("foo:rule1");
+    assertThat(rule1Total.getCountInCurrentAnalysis()).isEqualTo(2);
+    assertThat(rule1Total.getNewIssuesCount()).isEqualTo(1);
+    assertThat(summary.getTotalByRuleKey().get("foo:rule2").getResolvedIssuesCount()).isEqualTo(1);
+
+    assertThat(summary.getRuleReports()).hasSize(2);
+    assertThat(summary.getRuleReports().get(0).getRule()).isSameAs(rule1);
+    assertThat(summary.getRuleReports().get(0).getTotal().getCountInCurrentAnalysis()).isEqualTo(2);
+  }
+
+  @Test
+  public void should_sort_rule_reports_once_until_next_issue() {
+    RuleKey ruleKey1 = RuleKey.of("foo", "rule1");
+    RuleKey ruleKey2 = RuleKey.of("foo", "rule2");
+    RuleDescriptor rule1 = new RuleDescriptor(0, ruleKey1, null);
+    RuleDescriptor rule2 = new RuleDescriptor(1, ruleKey2, null);
+    ReportSummary summary = new ReportSummary();
+    summary.addIssue(fakeIssue(false, ruleKey2, "foo", 1), rule2);
+
+    List<RuleReport> sorted = summary.getRuleReports();
+    assertThat(summary.getRuleReports()).isSameAs(sorted);
+
+    summary.addIssue(fakeIssue(false, ruleKey1, "foo", 2), rule1);
+    assertThat(summary.getRuleReports()).isNotSameAs(sorted);
+    assertThat(summary.getRuleReports().get(0).getRule()).isSameAs(rule1);
+    assertThat(summary.getRuleReports().get(1).getRule()).isSameAs(rule2);
+  }
+
+}
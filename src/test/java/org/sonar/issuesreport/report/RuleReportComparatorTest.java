@@ -21,36 +21,37 @@ package org.sonar.issuesreport.report;
 
 import org.junit.Test;
 import org.sonar.api.batch.rule.Severity;
-import org.sonar.api.rules.Rule;
+import org.sonar.api.rule.RuleKey;
 
 import java.util.Arrays;
 import java.util.List;
 
 import static org.fest.assertions.Assertions.assertThat;
+import static org.sonar.issuesreport.IssuesReportFakeUtils.fakeRule;
 
 public class RuleReportComparatorTest {
 
   @Test
   public void testOrderOfRuleReport() {
-    RuleReport oneNewMajorIssue = new RuleReport(new ReportRuleKey(Rule.create("foo", "bar"), Severity.MAJOR));
+    RuleReport oneNewMajorIssue = new RuleReport(new ReportRuleKey(fakeRule(RuleKey.of("foo", "bar")), Severity.MAJOR));
     oneNewMajorIssue.getTotal().incrementNewIssuesCount();
 
-    RuleReport oneNewBlockerIssue = new RuleReport(new ReportRuleKey(Rule.create("foo", "bar"), Severity.BLOCKER));
+    RuleReport oneNewBlockerIssue = new RuleReport(new ReportRuleKey(fakeRule(RuleKey.of("foo", "bar")), Severity.BLOCKER));
     oneNewBlockerIssue.getTotal().incrementNewIssuesCount();
 
-    RuleReport oneMajorIssue = new RuleReport(new ReportRuleKey(Rule.create("foo", "bar"), Severity.MAJOR));
+    RuleReport oneMajorIssue = new RuleReport(new ReportRuleKey(fakeRule(RuleKey.of("foo", "bar")), Severity.MAJOR));
     oneMajorIssue.getTotal().incrementCountInCurrentAnalysis();
 
-    RuleReport oneMajorIssueAnotherRule = new RuleReport(new ReportRuleKey(Rule.create("foo", "baq"), Severity.MAJOR));
+    RuleReport oneMajorIssueAnotherRule = new RuleReport(new ReportRuleKey(fakeRule(RuleKey.of("foo", "baq")), Severity.MAJOR));
     oneMajorIssueAnotherRule.getTotal().incrementCountInCurrentAnalysis();
 
-    RuleReport oneBlockerIssue = new RuleReport(new ReportRuleKey(Rule.create("foo", "bar"), Severity.BLOCKER));
+    RuleReport oneBlockerIssue = new RuleReport(new ReportRuleKey(fakeRule(RuleKey.of("foo", "bar")), Severity.BLOCKER));
     oneBlockerIssue.getTotal().incrementCountInCurrentAnalysis();
 
-    RuleReport oneNewMajorIssueAnotherRule = new RuleReport(new ReportRuleKey(Rule.create("foo", "baq"), Severity.MAJOR));
+    RuleReport oneNewMajorIssueAnotherRule = new RuleReport(new ReportRuleKey(fakeRule(RuleKey.of("foo", "baq")), Severity.MAJOR));
     oneNewMajorIssueAnotherRule.getTotal().incrementNewIssuesCount();
 
-    RuleReport twoNewMajorIssue = new RuleReport(new ReportRuleKey(Rule.create("foo", "bar"), Severity.MAJOR));
+    RuleReport twoNewMajorIssue = new RuleReport(new ReportRuleKey(fakeRule(RuleKey.of("foo", "bar")), Severity.MAJOR));
     twoNewMajorIssue.getTotal().incrementNewIssuesCount();
     twoNewMajorIssue.getTotal().incrementNewIssuesCount();
 